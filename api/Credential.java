@@ -3,6 +3,7 @@ package org.nms.api;
 import io.vertx.core.json.JsonArray;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
+import org.nms.cache.MonitorCache;
 import org.nms.validators.Validators;
 import org.nms.constants.Fields;
 import org.nms.constants.Queries;
@@ -208,6 +209,13 @@ public class Credential implements BaseHandler
                     {
                         var res = updateResult.result();
 
+                        if (!res.isEmpty())
+                        {
+                            MonitorCache.getInstance().updateCredential(res.getJsonObject(0));
+
+                            VERTX.eventBus().send(Fields.EventBus.CREDENTIAL_CHANGED_ADDRESS, id);
+                        }
+
                         sendSuccess(ctx, 200, "Credential updated successfully", res);
                     }
                     else
@@ -247,15 +255,19 @@ public class Credential implements BaseHandler
 
                 deleteRequest.onComplete(deleteResult ->
                 {
-                    if (asyncResult.succeeded())
+                    if (deleteResult.succeeded())
                     {
-                        var res = asyncResult.result();
+                        var res = deleteResult.result();
+
+                        MonitorCache.getInstance().deleteCredential(id);
+
+                        VERTX.eventBus().send(Fields.EventBus.CREDENTIAL_CHANGED_ADDRESS, id);
 
                         sendSuccess(ctx, 200, "Credential deleted successfully", res);
                     }
                     else
                     {
-                        sendFailure(ctx, 500, "Something Went Wrong", asyncResult.cause().getMessage());
+                        sendFailure(ctx, 500, "Something Went Wrong", deleteResult.cause().getMessage());
                     }
                 });
             }
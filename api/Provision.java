@@ -16,10 +16,12 @@ import static org.nms.constants.Fields.PluginPollingRequest.METRIC_GROUPS;
 
 import org.nms.App;
 import org.nms.cache.MonitorCache;
+import org.nms.cache.StaticResultCache;
 import org.nms.constants.Config;
 import org.nms.validators.Validators;
 import org.nms.constants.Fields;
 import org.nms.constants.Queries;
+import org.nms.scheduler.CircuitBreakerRegistry;
 import org.nms.utils.DbUtils;
 
 import java.util.ArrayList;
@@ -80,7 +82,7 @@ public class Provision implements BaseHandler
 
                     return;
                 }
-                sendSuccess(ctx, 200, "Provisions found", monitors);
+                sendSuccess(ctx, 200, "Provisions found", withCircuitBreakerState(monitors));
             }
             else
             {
@@ -109,7 +111,7 @@ public class Provision implements BaseHandler
                     return;
                 }
 
-                sendSuccess(ctx, 200, "Provision found", monitor);
+                sendSuccess(ctx, 200, "Provision found", withCircuitBreakerState(monitor));
             }
             else
             {
@@ -236,6 +238,10 @@ public class Provision implements BaseHandler
                         {
                             MonitorCache.getInstance().delete(deletedMonitor.getJsonObject(0).getInteger(Fields.MetricGroup.ID));
 
+                            CircuitBreakerRegistry.getInstance().remove(deletedMonitor.getJsonObject(0).getInteger(Fields.MetricGroup.ID));
+
+                            StaticResultCache.getInstance().remove(deletedMonitor.getJsonObject(0).getInteger(Fields.MetricGroup.ID));
+
                             sendSuccess(ctx, 200, "Provision deleted successfully", provision);
                         }
                         else
@@ -317,6 +323,19 @@ public class Provision implements BaseHandler
                 });
     }
 
+    // Adds polling circuit breaker state to every monitor
+    private JsonArray withCircuitBreakerState(JsonArray monitors)
+    {
+        for (var i = 0; i < monitors.size(); i++)
+        {
+            var monitor = monitors.getJsonObject(i);
+
+            monitor.put(Fields.Monitor.CIRCUIT_BREAKER, CircuitBreakerRegistry.getInstance().state(monitor.getInteger(Fields.Monitor.ID)));
+        }
+
+        return monitors;
+    }
+
     private boolean validateProvisionCreation(RoutingContext ctx)
     {
         final String IPS = "ips";
@@ -409,9 +428,9 @@ public class Provision implements BaseHandler
                     return true;
                 }
 
-                if( ( (interval == null || interval < Config.SCHEDULER_CHECKING_INTERVAL || interval % Config.SCHEDULER_CHECKING_INTERVAL != 0) & enable == null ) )
+                if( ( (interval == null || interval < Config.MIN_POLLING_INTERVAL) & enable == null ) )
                 {
-                    sendFailure(ctx, 400,"Provide Polling Interval ( Multiple of " + Config.SCHEDULER_CHECKING_INTERVAL + " ) Or Enable ( true or false )");
+                    sendFailure(ctx, 400,"Provide Polling Interval ( At least " + Config.MIN_POLLING_INTERVAL + " seconds ) Or Enable ( true or false )");
 
                     return true;
                 }
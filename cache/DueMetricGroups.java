@@ -0,0 +1,117 @@
+package org.nms.cache;
+
+import io.vertx.core.json.JsonObject;
+
+import java.util.Arrays;
+
+/**
+ * Flat snapshot of metric groups collected from MonitorCache in one scheduler run.
+ * Kept as parallel arrays so nothing is boxed, Json is only built when plugin request is prepared.
+ */
+public class DueMetricGroups
+{
+    private int size = 0;
+
+    private int[] ids;
+
+    private int[] monitorIds;
+
+    private int[] ports;
+
+    private String[] ips;
+
+    private String[] names;
+
+    private JsonObject[] credentials;
+
+    DueMetricGroups(int expectedSize)
+    {
+        var capacity = Math.max(8, expectedSize);
+
+        ids = new int[capacity];
+
+        monitorIds = new int[capacity];
+
+        ports = new int[capacity];
+
+        ips = new String[capacity];
+
+        names = new String[capacity];
+
+        credentials = new JsonObject[capacity];
+    }
+
+    void add(int id, int monitorId, String ip, int port, String name, JsonObject credential)
+    {
+        if (size == ids.length)
+        {
+            var capacity = size * 2;
+
+            ids = Arrays.copyOf(ids, capacity);
+
+            monitorIds = Arrays.copyOf(monitorIds, capacity);
+
+            ports = Arrays.copyOf(ports, capacity);
+
+            ips = Arrays.copyOf(ips, capacity);
+
+            names = Arrays.copyOf(names, capacity);
+
+            credentials = Arrays.copyOf(credentials, capacity);
+        }
+
+        ids[size] = id;
+
+        monitorIds[size] = monitorId;
+
+        ports[size] = port;
+
+        ips[size] = ip;
+
+        names[size] = name;
+
+        credentials[size] = credential;
+
+        size++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public int id(int index)
+    {
+        return ids[index];
+    }
+
+    public int monitorId(int index)
+    {
+        return monitorIds[index];
+    }
+
+    public int port(int index)
+    {
+        return ports[index];
+    }
+
+    public String ip(int index)
+    {
+        return ips[index];
+    }
+
+    public String name(int index)
+    {
+        return names[index];
+    }
+
+    public JsonObject credential(int index)
+    {
+        return credentials[index];
+    }
+}
@@ -0,0 +1,185 @@
+package org.nms.cache;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing int to int map with linear probing, no boxing and no per entry allocation.
+ * Integer.MIN_VALUE is reserved as empty marker and can't be used as key.
+ * Not thread safe, callers have to synchronize access.
+ */
+public class IntIntMap
+{
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private static final int MISSING = -1;
+
+    private int[] keys;
+
+    private int[] values;
+
+    private int mask;
+
+    private int size = 0;
+
+    public IntIntMap(int expectedSize)
+    {
+        var capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+
+        allocate(capacity);
+    }
+
+    // Returns value for key or -1 if key is absent
+    public int get(int key)
+    {
+        var index = indexOf(key);
+
+        return index < 0 ? MISSING : values[index];
+    }
+
+    public boolean containsKey(int key)
+    {
+        return indexOf(key) >= 0;
+    }
+
+    // Returns previous value or -1 if key was absent
+    public int put(int key, int value)
+    {
+        if (key == EMPTY)
+        {
+            throw new IllegalArgumentException("Key " + EMPTY + " is reserved");
+        }
+
+        var index = hash(key) & mask;
+
+        while (keys[index] != EMPTY)
+        {
+            if (keys[index] == key)
+            {
+                var previous = values[index];
+
+                values[index] = value;
+
+                return previous;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+
+        values[index] = value;
+
+        // Keep load factor under 0.5 so probe chains stay short
+        if (++size * 2 > keys.length)
+        {
+            rehash(keys.length * 2);
+        }
+
+        return MISSING;
+    }
+
+    // Returns removed value or -1 if key was absent
+    public int remove(int key)
+    {
+        var index = indexOf(key);
+
+        if (index < 0)
+        {
+            return MISSING;
+        }
+
+        var removed = values[index];
+
+        // Backward shift deletion, keeps probe chains intact without tombstones
+        var gap = index;
+
+        var next = (gap + 1) & mask;
+
+        while (keys[next] != EMPTY)
+        {
+            var home = hash(keys[next]) & mask;
+
+            // Move entry into gap only if gap lies between its home slot and its current slot
+            if (((next - home) & mask) >= ((next - gap) & mask))
+            {
+                keys[gap] = keys[next];
+
+                values[gap] = values[next];
+
+                gap = next;
+            }
+
+            next = (next + 1) & mask;
+        }
+
+        keys[gap] = EMPTY;
+
+        size--;
+
+        return removed;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private int indexOf(int key)
+    {
+        if (key == EMPTY)
+        {
+            return -1;
+        }
+
+        var index = hash(key) & mask;
+
+        while (keys[index] != EMPTY)
+        {
+            if (keys[index] == key)
+            {
+                return index;
+            }
+
+            index = (index + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    private void rehash(int capacity)
+    {
+        var oldKeys = keys;
+
+        var oldValues = values;
+
+        allocate(capacity);
+
+        size = 0;
+
+        for (var i = 0; i < oldKeys.length; i++)
+        {
+            if (oldKeys[i] != EMPTY)
+            {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+
+        values = new int[capacity];
+
+        mask = capacity - 1;
+
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private static int hash(int key)
+    {
+        var hash = key * 0x9E3779B9;
+
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -3,14 +3,16 @@ package org.nms.cache;
 import io.vertx.core.Future;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Arrays;
+import java.util.HashMap;
 
 import static org.nms.App.LOGGER;
 
+import org.nms.App;
+import org.nms.constants.Config;
 import org.nms.constants.Fields;
 import org.nms.constants.Queries;
+import org.nms.scheduler.TimingWheel;
 import org.nms.utils.DbUtils;
 
 public class MonitorCache
@@ -29,9 +31,48 @@ public class MonitorCache
         return instance;
     }
 
-    private final ConcurrentHashMap<Integer, JsonObject> cachedMetricGroups = new ConcurrentHashMap<>();
+    private static final int NONE = -1;
 
-    private final ConcurrentHashMap<Integer, JsonObject> referencedMetricGroups = new ConcurrentHashMap<>();
+    // Metric group id -> storage slot
+    private final IntIntMap slotsById = new IntIntMap(1024);
+
+    // Monitor id -> first storage slot of its metric groups, rest are chained through nextInMonitor
+    private final IntIntMap firstSlotsByMonitor = new IntIntMap(256);
+
+    // Credential id -> credential, shared by all metric groups using it
+    private final HashMap<Integer, JsonObject> credentialsById = new HashMap<>();
+
+    // Credential id -> number of metric groups referencing it
+    private final IntIntMap credentialReferences = new IntIntMap(64);
+
+    private final TimingWheel timingWheel = new TimingWheel(Config.SCHEDULER_TICK_MILLIS, Config.SCHEDULER_WHEEL_SIZE, currentTime());
+
+    // ===== Metric group storage, one slot per metric group =====
+    private int[] ids = new int[0];
+
+    private int[] monitorIds = new int[0];
+
+    private int[] ports = new int[0];
+
+    private int[] intervals = new int[0];
+
+    private boolean[] enabled = new boolean[0];
+
+    private long[] nextDue = new long[0];
+
+    private int[] nextInMonitor = new int[0];
+
+    private String[] ips = new String[0];
+
+    private String[] names = new String[0];
+
+    private int[] credentialIds = new int[0];
+
+    private int[] freeSlots = new int[0];
+
+    private int freeSlotCount = 0;
+
+    private int usedSlots = 0;
 
     // Populate cache from database
     public Future<JsonArray> init()
@@ -58,7 +99,7 @@ public class MonitorCache
     }
 
     // Insert monitors into cache
-    public void insert(JsonArray monitorArray)
+    public synchronized void insert(JsonArray monitorArray)
     {
         for (var i = 0; i < monitorArray.size(); i++)
         {
@@ -70,21 +111,66 @@ public class MonitorCache
                 {
                     var metricObject = monitorObject.getJsonArray(Fields.Monitor.METRIC_GROUP_JSON).getJsonObject(k);
 
-                    var value = new JsonObject()
-                            .put(Fields.MonitorCache.ID, metricObject.getInteger(Fields.MetricGroup.ID))
-                            .put(Fields.MonitorCache.MONITOR_ID, monitorObject.getInteger(Fields.Monitor.ID))
-                            .put(Fields.MonitorCache.IP, monitorObject.getString(Fields.Monitor.IP))
-                            .put(Fields.MonitorCache.PORT, Integer.valueOf(monitorObject.getString(Fields.Monitor.PORT)))
-                            .put(Fields.MonitorCache.CREDENTIAL, monitorObject.getJsonObject(Fields.Monitor.CREDENTIAL_JSON).copy())
-                            .put(Fields.MonitorCache.NAME, metricObject.getString(Fields.MetricGroup.NAME))
-                            .put(Fields.MonitorCache.POLLING_INTERVAL, metricObject.getInteger(Fields.MetricGroup.POLLING_INTERVAL))
-                            .put(Fields.MonitorCache.IS_ENABLED, metricObject.getBoolean(Fields.MetricGroup.IS_ENABLED));
+                    // Read and check every field first, a bad monitor must not leave a half filled slot or a leaked credential reference
+                    var id = metricObject.getInteger(Fields.MetricGroup.ID);
+
+                    var monitorId = monitorObject.getInteger(Fields.Monitor.ID);
+
+                    var ip = monitorObject.getString(Fields.Monitor.IP);
+
+                    var port = Integer.parseInt(monitorObject.getString(Fields.Monitor.PORT));
+
+                    var name = metricObject.getString(Fields.MetricGroup.NAME);
+
+                    var interval = metricObject.getInteger(Fields.MetricGroup.POLLING_INTERVAL);
+
+                    var isEnabled = metricObject.getBoolean(Fields.MetricGroup.IS_ENABLED, true);
+
+                    var credential = monitorObject.getJsonObject(Fields.Monitor.CREDENTIAL_JSON);
+
+                    if (id == null || monitorId == null || interval == null || interval <= 0 || credential == null || credential.getInteger(Fields.Credential.ID) == null)
+                    {
+                        throw new IllegalArgumentException("Monitor " + monitorId + " has missing or invalid fields");
+                    }
+
+                    var slot = slotsById.get(id);
+
+                    var previousCredentialId = slot != NONE ? credentialIds[slot] : NONE;
+
+                    if (slot == NONE)
+                    {
+                        slot = allocateSlot();
+
+                        slotsById.put(id, slot);
+
+                        nextInMonitor[slot] = firstSlotsByMonitor.containsKey(monitorId) ? firstSlotsByMonitor.get(monitorId) : NONE;
+
+                        firstSlotsByMonitor.put(monitorId, slot);
+                    }
+
+                    // New credential is referenced before old one is released, so a credential kept by same slot is never dropped
+                    credentialIds[slot] = internCredential(credential);
+
+                    if (previousCredentialId != NONE)
+                    {
+                        releaseCredential(previousCredentialId);
+                    }
+
+                    ids[slot] = id;
+
+                    monitorIds[slot] = monitorId;
+
+                    ips[slot] = ip;
+
+                    ports[slot] = port;
 
-                    var key = metricObject.getInteger(Fields.MetricGroup.ID);
+                    names[slot] = name;
 
-                    referencedMetricGroups.put(key, value.copy());
+                    intervals[slot] = interval;
 
-                    cachedMetricGroups.put(key, value.copy());
+                    enabled[slot] = isEnabled;
+
+                    reschedule(slot);
                 }
                 catch (Exception exception)
                 {
@@ -93,42 +179,40 @@ public class MonitorCache
             }
         }
 
+        requestReschedule();
 
-        LOGGER.info("📬 Inserted " + monitorArray.size() + " monitors Into Cache, Total Entries: " + cachedMetricGroups.size());
+        LOGGER.info("📬 Inserted " + monitorArray.size() + " monitors Into Cache, Total Entries: " + slotsById.size());
     }
 
     // Update metric groups in cache
-    public void update(JsonArray metricGroups)
+    public synchronized void update(JsonArray metricGroupArray)
     {
-        for (var i = 0; i < metricGroups.size(); i++)
+        for (var i = 0; i < metricGroupArray.size(); i++)
         {
             try
             {
-                var metricGroup = metricGroups.getJsonObject(i);
+                var metricGroup = metricGroupArray.getJsonObject(i);
 
-                var key = metricGroup.getInteger(Fields.MonitorCache.ID);
+                var slot = slotsById.get(metricGroup.getInteger(Fields.MonitorCache.ID));
 
-                var updatedValue = referencedMetricGroups.get(key).copy();
+                if (slot == NONE)
+                {
+                    continue;
+                }
 
                 // Update polling interval if provided
                 if (metricGroup.getValue(Fields.MonitorCache.POLLING_INTERVAL) != null)
                 {
-                    updatedValue.put(Fields.MonitorCache.POLLING_INTERVAL,
-                            metricGroup.getInteger(Fields.MonitorCache.POLLING_INTERVAL));
+                    intervals[slot] = metricGroup.getInteger(Fields.MonitorCache.POLLING_INTERVAL);
                 }
 
-                // Remove if disabled
-                if (metricGroup.getBoolean(Fields.MonitorCache.IS_ENABLED) != null
-                        && !metricGroup.getBoolean(Fields.MonitorCache.IS_ENABLED))
+                // Update enabled flag if provided, disabled groups stay in cache but are not scheduled
+                if (metricGroup.getBoolean(Fields.MonitorCache.IS_ENABLED) != null)
                 {
-                    referencedMetricGroups.remove(key);
-                    cachedMetricGroups.remove(key);
-                    continue;
+                    enabled[slot] = metricGroup.getBoolean(Fields.MonitorCache.IS_ENABLED);
                 }
 
-                // Update both caches
-                referencedMetricGroups.put(key, updatedValue);
-                cachedMetricGroups.put(key, updatedValue);
+                reschedule(slot);
             }
             catch (Exception exception)
             {
@@ -136,75 +220,271 @@ public class MonitorCache
             }
         }
 
-        LOGGER.info("➖ Updated " + metricGroups.size() + " Entries in Cache");
+        requestReschedule();
+
+        LOGGER.info("➖ Updated " + metricGroupArray.size() + " Entries in Cache");
     }
 
     // Delete metric groups for a specific monitor
-    public void delete(Integer monitorId)
+    public synchronized void delete(Integer monitorId)
     {
-        var removedCount = new ArrayList<Integer>();
+        var removedCount = 0;
+
+        var slot = firstSlotsByMonitor.remove(monitorId);
+
+        var removedIds = new JsonArray();
 
-        referencedMetricGroups.entrySet().removeIf(entry ->
+        while (slot != NONE)
         {
-            if (entry.getValue().getInteger(Fields.MonitorCache.MONITOR_ID).equals(monitorId))
-            {
-                cachedMetricGroups.remove(entry.getKey());
+            var next = nextInMonitor[slot];
 
-                removedCount.add(entry.getKey());
+            removedIds.add(ids[slot]);
 
-                return true;
-            }
-            return false;
-        });
+            slotsById.remove(ids[slot]);
+
+            timingWheel.cancel(slot);
+
+            releaseSlot(slot);
+
+            removedCount++;
+
+            slot = next;
+        }
 
-        LOGGER.info("➖ Removed " + removedCount.size() + " Entries from Cache");
+        // Scheduler drops its per metric group state of them
+        if (!removedIds.isEmpty())
+        {
+            App.VERTX.eventBus().send(Fields.EventBus.SCHEDULER_METRIC_GROUPS_DELETED_ADDRESS, removedIds);
+        }
+
+        LOGGER.info("➖ Removed " + removedCount + " Entries from Cache");
     }
 
-    // Decrement intervals and collect timed-out metric groups
-    public List<JsonObject> collect(int interval)
+    // Replace cached credential after it was updated, no-op if no metric group uses it
+    public synchronized void updateCredential(JsonObject credential)
     {
-        var timedOutMetricGroups = new ArrayList<JsonObject>();
+        var id = credential.getInteger(Fields.Credential.ID);
 
-        // Collect and process timed-out groups in a single pass
-        cachedMetricGroups.entrySet().removeIf(entry ->
+        if (credentialsById.containsKey(id))
         {
-            var value = entry.getValue();
+            credentialsById.put(id, credential);
 
-            var currentInterval = value.getInteger(Fields.MonitorCache.POLLING_INTERVAL, 0);
+            LOGGER.info("🔑 Updated Credential " + id + " in Cache");
+        }
+    }
 
-            var updatedInterval = Math.max(0, currentInterval - interval);
+    // Drop cached credential after it was deleted, one still used by cached metric groups is dropped with its last reference
+    public synchronized void deleteCredential(Integer id)
+    {
+        if (credentialReferences.get(id) > 0)
+        {
+            LOGGER.warn("⚠ Credential " + id + " is still used by cached metric groups, kept in Cache");
 
-            // If interval reaches 0, it's timed out
-            if (updatedInterval == 0)
-            {
-                // Create a copy of the timed-out group
-                var timedOutGroup = value.copy();
+            return;
+        }
 
-                // Reset interval to original value from reference
-                var originalIntervalEntry = referencedMetricGroups
-                        .get(entry.getKey())
-                        .getInteger(Fields.MonitorCache.POLLING_INTERVAL);
+        if (credentialsById.remove(id) != null)
+        {
+            credentialReferences.remove(id);
 
-                timedOutGroup.put(Fields.MonitorCache.POLLING_INTERVAL, originalIntervalEntry);
+            LOGGER.info("🔑 Removed Credential " + id + " from Cache");
+        }
+    }
+
+    // Advance timing wheel up to now and collect timed-out metric groups
+    public synchronized DueMetricGroups collect()
+    {
+        var now = currentTime();
 
-                // Add to timed-out groups
-                timedOutMetricGroups.add(timedOutGroup);
+        var timedOutMetricGroups = new DueMetricGroups(64);
 
-                // Update the cached value with reset interval
-                value.put(Fields.MonitorCache.POLLING_INTERVAL, originalIntervalEntry);
+        timingWheel.advance(now, slot ->
+        {
+            timedOutMetricGroups.add(ids[slot], monitorIds[slot], ips[slot], ports[slot], names[slot], credentialsById.get(credentialIds[slot]));
+
+            // Extra poll requested out of cycle, regular schedule stays as it was
+            if (nextDue[slot] > now)
+            {
+                timingWheel.schedule(slot, nextDue[slot]);
+
+                return;
             }
-            else
+
+            // Next due keeps fixed rate from previous due, skipping slots which were already missed
+            var interval = intervals[slot] * 1000L;
+
+            var due = nextDue[slot] + interval;
+
+            if (due <= now)
             {
-                // Update interval in cached value
-                value.put(Fields.MonitorCache.POLLING_INTERVAL, updatedInterval);
+                due += ((now - due) / interval + 1) * interval;
             }
 
-            // return false to keep all entries
-            return false;
+            nextDue[slot] = due;
+
+            timingWheel.schedule(slot, due);
         });
 
         LOGGER.debug("⏰ Found " + timedOutMetricGroups.size() + " Timed Out Metric Groups");
 
         return timedOutMetricGroups;
     }
+
+    // Make metric group due right away without shifting its regular schedule, caller has to re-arm scheduler
+    public synchronized void pollNow(int id)
+    {
+        var slot = slotsById.get(id);
+
+        if (slot == NONE || !enabled[slot])
+        {
+            return;
+        }
+
+        timingWheel.schedule(slot, currentTime());
+    }
+
+    // Milliseconds until next metric group is due, -1 if nothing is scheduled
+    public synchronized long nextDueIn()
+    {
+        var nextExpiry = timingWheel.nextExpiry();
+
+        return nextExpiry < 0 ? -1L : Math.max(0L, nextExpiry - currentTime());
+    }
+
+    // Monotonic clock in milliseconds, all due times in cache are relative to it
+    public static long currentTime()
+    {
+        return System.nanoTime() / 1_000_000L;
+    }
+
+    // Place slot on wheel from its interval, or take it off when disabled
+    private void reschedule(int slot)
+    {
+        if (!enabled[slot] || intervals[slot] <= 0)
+        {
+            timingWheel.cancel(slot);
+
+            return;
+        }
+
+        nextDue[slot] = firstDue(monitorIds[slot], intervals[slot] * 1000L);
+
+        timingWheel.schedule(slot, nextDue[slot]);
+    }
+
+    // Keep one credential object per credential id, latest copy from database wins
+    private int internCredential(JsonObject credential)
+    {
+        var id = credential.getInteger(Fields.Credential.ID);
+
+        credentialsById.put(id, credential);
+
+        credentialReferences.put(id, Math.max(0, credentialReferences.get(id)) + 1);
+
+        return id;
+    }
+
+    private void releaseCredential(int id)
+    {
+        var references = credentialReferences.get(id) - 1;
+
+        if (references > 0)
+        {
+            credentialReferences.put(id, references);
+        }
+        else
+        {
+            credentialReferences.remove(id);
+
+            credentialsById.remove(id);
+        }
+    }
+
+    private int allocateSlot()
+    {
+        if (freeSlotCount > 0)
+        {
+            return freeSlots[--freeSlotCount];
+        }
+
+        if (usedSlots == ids.length)
+        {
+            var capacity = Math.max(64, ids.length * 2);
+
+            ids = Arrays.copyOf(ids, capacity);
+
+            monitorIds = Arrays.copyOf(monitorIds, capacity);
+
+            ports = Arrays.copyOf(ports, capacity);
+
+            intervals = Arrays.copyOf(intervals, capacity);
+
+            enabled = Arrays.copyOf(enabled, capacity);
+
+            nextDue = Arrays.copyOf(nextDue, capacity);
+
+            nextInMonitor = Arrays.copyOf(nextInMonitor, capacity);
+
+            ips = Arrays.copyOf(ips, capacity);
+
+            names = Arrays.copyOf(names, capacity);
+
+            credentialIds = Arrays.copyOf(credentialIds, capacity);
+
+            freeSlots = Arrays.copyOf(freeSlots, capacity);
+        }
+
+        return usedSlots++;
+    }
+
+    private void releaseSlot(int slot)
+    {
+        releaseCredential(credentialIds[slot]);
+
+        // Drop references so released slots don't keep strings alive
+        ips[slot] = null;
+
+        names[slot] = null;
+
+        enabled[slot] = false;
+
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    /**
+     * First due time of a metric group, placed at a fixed phase of its interval derived from monitor id.
+     * Monitors provisioned together get spread evenly over the interval, while all groups of one monitor stay aligned.
+     */
+    private long firstDue(int monitorId, long interval)
+    {
+        var now = currentTime();
+
+        if (!Config.POLLING_JITTER_ENABLED || interval <= 0)
+        {
+            return now + interval;
+        }
+
+        // Murmur3 finalizer, spreads sequential ids over whole int range
+        var hash = monitorId;
+
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+
+        var phase = ((hash & 0xffffffffL) * interval) >>> 32;
+
+        // Next instant after now which sits on this phase
+        var due = now - Math.floorMod(now, interval) + phase;
+
+        return due <= now ? due + interval : due;
+    }
+
+    // Ask scheduler to re-arm its timer, due times may have moved earlier
+    private void requestReschedule()
+    {
+        App.VERTX.eventBus().send(Fields.EventBus.SCHEDULER_RESCHEDULE_ADDRESS, null);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,78 @@
+package org.nms.cache;
+
+import org.nms.constants.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+/**
+ * Content hash of last stored result per (monitor, metric group) for metric groups whose data rarely changes.
+ * A result is only worth storing if its hash differs or stored copy is older than STATIC_RESULT_MAX_AGE.
+ * Fed by scheduler, entries of a monitor are dropped by API when it is deleted, so all methods are synchronized.
+ */
+public class StaticResultCache
+{
+    private static StaticResultCache instance;
+
+    private StaticResultCache(){}
+
+    public static StaticResultCache getInstance()
+    {
+        if(instance == null)
+        {
+            instance =  new StaticResultCache();
+        }
+
+        return instance;
+    }
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Monitor id -> metric group name -> hash and time of last stored result
+    private final HashMap<Integer, HashMap<String, long[]>> lastStored = new HashMap<>();
+
+    public boolean isStatic(String name)
+    {
+        return Config.STATIC_METRIC_GROUPS.contains(name);
+    }
+
+    /**
+     * Returns true if result equals last stored one which is not older than STATIC_RESULT_MAX_AGE, so it need not be stored
+     */
+    public synchronized boolean isUnchanged(int monitorId, String name, String data)
+    {
+        var monitorResults = lastStored.get(monitorId);
+
+        var stored = monitorResults == null ? null : monitorResults.get(name);
+
+        return stored != null && stored[0] == hash(data) && MonitorCache.currentTime() - stored[1] < Config.STATIC_RESULT_MAX_AGE * 1000L;
+    }
+
+    // Called once result is stored, a result whose insert failed is not remembered so next identical one is stored again
+    public synchronized void remember(int monitorId, String name, String data)
+    {
+        lastStored.computeIfAbsent(monitorId, id -> new HashMap<>()).put(name, new long[] {hash(data), MonitorCache.currentTime()});
+    }
+
+    public synchronized void remove(int monitorId)
+    {
+        lastStored.remove(monitorId);
+    }
+
+    // 64 bit FNV-1a, collisions between two payloads of one metric group are practically impossible
+    private long hash(String data)
+    {
+        var hash = FNV_OFFSET_BASIS;
+
+        for (var b : data.getBytes(StandardCharsets.UTF_8))
+        {
+            hash ^= (b & 0xff);
+
+            hash *= FNV_PRIME;
+        }
+
+        return hash;
+    }
+}
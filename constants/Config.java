@@ -1,5 +1,8 @@
 package org.nms.constants;
 
+import java.util.List;
+import java.util.Set;
+
 public class Config
 {
     public static final Boolean PRODUCTION = false;
@@ -12,14 +15,141 @@ public class Config
 
     public static final Integer HTTP_PORT = 8080;
 
-    public static final Integer MAX_WORKER_EXECUTE_TIME = 1500;
+    // Nothing waits on plugin or fping processes on worker threads, anything slower is reported as blocked
+    public static final Integer MAX_WORKER_EXECUTE_TIME = 60;
 
     public static final String INDIA_ZONE_NAME = "Asia/Kolkata";
 
-    public static final long MAX_IP_COUNT = 1024;
+    public static final long MAX_IP_COUNT = 65536;
 
     public static final int NUMBER_OF_DB_VERTICLE = 1;
 
+    // ===== Scheduler =====
+    public static final int SCHEDULER_WHEEL_SIZE = 4096;
+
+    public static final boolean POLLING_JITTER_ENABLED = true;
+
+    // Devices per plugin polling request
+    public static final int POLLING_BATCH_SIZE = 25;
+
+    public static final int MAX_CONCURRENT_POLLING_BATCHES = 4;
+
+    // What to do when a metric group comes due while its previous poll is in flight: SKIP, COALESCE or QUEUE
+    public static final String POLLING_OVERRUN_POLICY = "SKIP";
+
+    public static final int MAX_QUEUED_POLLS_PER_METRIC_GROUP = 2;
+
+    // Most skipped metric groups named in skipped polls warning
+    public static final int SKIPPED_POLLS_LOGGED_GROUPS = 5;
+
+    // Stop polling a monitor after this many failed polls in a row, backoff doubles from base up to max
+    public static final boolean CIRCUIT_BREAKER_ENABLED = true;
+
+    public static final int CIRCUIT_BREAKER_FAILURE_THRESHOLD = 3;
+
+    // Metric groups whose unchanged results are not stored again, only their heartbeat is refreshed
+    public static final Set<String> STATIC_METRIC_GROUPS = Set.of("CPUINFO", "SYSTEMINFO");
+
+    // ===== Plugin =====
+    // Ask plugin for one Json result per line and forward each result as soon as it is read
+    public static final boolean PLUGIN_STREAMING_ENABLED = true;
+
+    // Write request to plugin stdin instead of passing it as an argument, plugin reads stdin when its argument is "-"
+    public static final boolean PLUGIN_REQUEST_OVER_STDIN = true;
+
+    public static final String PLUGIN_STDIN_ARGUMENT = "-";
+
+    // Plugin requests running at once and waiting per lane, polling lane should fit MAX_CONCURRENT_POLLING_BATCHES
+    public static final int POLLING_LANE_CONCURRENCY = 4;
+
+    public static final int POLLING_LANE_QUEUE_SIZE = 64;
+
+    public static final int DISCOVERY_LANE_CONCURRENCY = 2;
+
+    public static final int DISCOVERY_LANE_QUEUE_SIZE = 16;
+
+    // ===== Process =====
+    // Threads doing blocking pipe I/O of plugin and fping processes: VIRTUAL or PLATFORM
+    public static final String PROCESS_THREAD_MODE = "VIRTUAL";
+
+    // Output kept from an external process, anything beyond is read and dropped
+    public static final int PROCESS_MAX_OUTPUT_SIZE = 16 * 1024 * 1024;
+
+    public static final int PROCESS_MAX_ERROR_OUTPUT_SIZE = 64 * 1024;
+
+    public static final int PROCESS_STDIN_CHUNK_SIZE = 64 * 1024;
+
+    // ===== Plugin Workers =====
+    // Keep plugin processes alive and talk to them with length prefixed frames, instead of spawning per request
+    public static final boolean PLUGIN_WORKER_POOL_ENABLED = false;
+
+    public static final int PLUGIN_WORKER_POOL_SIZE = 4;
+
+    public static final String PLUGIN_WORKER_ARGUMENT = "--worker";
+
+    public static final int PLUGIN_MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    // Frame encoding per request type, json or msgpack
+    public static final String PLUGIN_POLLING_ENCODING = "msgpack";
+
+    public static final String PLUGIN_DISCOVERY_ENCODING = "json";
+
+    // ===== In Process Collector =====
+    // Poll devices whose credential protocol is listed here from inside JVM over pooled sessions, rest still goes to plugin
+    public static final boolean IN_PROCESS_COLLECTOR_ENABLED = false;
+
+    public static final Set<String> IN_PROCESS_COLLECTOR_PROTOCOLS = Set.of("winrm");
+
+    public static final String WINRM_PATH = "/wsman";
+
+    // WinRM is spoken over HTTPS ( usually port 5986 ) whatever the port, plain HTTP ( usually 5985 ) only when this is off
+    public static final boolean WINRM_USE_HTTPS = true;
+
+    // Opt in for plain HTTP, Basic authentication then sends username and password in cleartext on every request
+    public static final boolean WINRM_ALLOW_BASIC_OVER_HTTP = false;
+
+    // Opt in for hosts with self signed certificates, turns off certificate and hostname checks so traffic can be intercepted.
+    // Prefer adding host certificates to JVM trust store
+    public static final boolean WINRM_TRUST_ALL_CERTIFICATES = false;
+
+    public static final int WINRM_MAX_IDLE_SESSIONS_PER_HOST = 2;
+
+    // ===== Discovery =====
+    // Port check connects open at once and started per second across all discoveries, kept low enough not to trip firewall SYN limits
+    public static final int PORT_SCAN_MAX_IN_FLIGHT = 256;
+
+    public static final int PORT_SCAN_RATE = 500;
+
+    // Range is pinged in chunks of this size, next chunk waits while this many ips are still in port or credential check
+    public static final int DISCOVERY_CHUNK_SIZE = 256;
+
+    public static final int DISCOVERY_MAX_IPS_IN_PROGRESS = 1024;
+
+    // fping processes running at once across all discoveries, and chunks of one discovery pinged at once
+    public static final int FPING_MAX_PROCESSES = 8;
+
+    public static final int DISCOVERY_PARALLEL_CHUNKS = 4;
+
+    public static final int FPING_RETRIES = 1;
+
+    // Reachability check of discovery: FPING runs fping processes, PROBER probes from inside JVM without fping
+    public static final String REACHABILITY_ENGINE = "FPING";
+
+    // Prober strategies tried in order until one finds host up: TCP connects to REACHABILITY_TCP_PORTS, ICMP uses InetAddress.isReachable
+    public static final List<String> REACHABILITY_STRATEGIES = List.of("TCP", "ICMP");
+
+    public static final List<Integer> REACHABILITY_TCP_PORTS = List.of(22, 135, 443, 445, 3389, 5985, 5986);
+
+    public static final int REACHABILITY_MAX_CONCURRENT_PROBES = 512;
+
+    // Ips that passed port check go to credential check in batches of this size, at most this many batches at once per discovery
+    public static final int DISCOVERY_CREDENTIAL_BATCH_SIZE = 16;
+
+    public static final int DISCOVERY_MAX_IN_FLIGHT_BATCHES = 2;
+
+    // Failed ping and port check results are stored in batches of this size
+    public static final int DISCOVERY_RESULT_INSERT_BATCH_SIZE = 256;
+
     // ===== DB =====
     public static final Integer DB_PORT = 5000;
 
@@ -32,7 +162,9 @@ public class Config
     public static final String DB_PASSWORD = "nms";
 
     // ====== Time ( in seconds ) =====
-    public static final int SCHEDULER_CHECKING_INTERVAL = 60;
+    public static final int DEFAULT_POLLING_INTERVAL = 60;
+
+    public static final int MIN_POLLING_INTERVAL = 5;
 
     public static final int PORT_TIMEOUT = 1;
 
@@ -41,4 +173,44 @@ public class Config
     public static final int DISCOVERY_TIMEOUT_PER_IP = 10;
 
     public static final int POLLING_TIMEOUT_PER_METRIC_GROUP = 15;
+
+    public static final int PLUGIN_WORKER_HEALTH_CHECK_INTERVAL = 30;
+
+    public static final int PLUGIN_WORKER_HEALTH_TIMEOUT = 5;
+
+    public static final int PLUGIN_WORKER_RESTART_DELAY = 2;
+
+    public static final int EXECUTION_LANE_STATS_INTERVAL = 60;
+
+    // Pooled WinRM session unused this long is closed
+    public static final int WINRM_SESSION_IDLE_TIMEOUT = 120;
+
+    public static final long CIRCUIT_BREAKER_BASE_BACKOFF = 60;
+
+    public static final long CIRCUIT_BREAKER_MAX_BACKOFF = 3600;
+
+    public static final int CIRCUIT_BREAKER_PROBE_TIMEOUT = 120;
+
+    // Unchanged static result is still stored once this old
+    public static final long STATIC_RESULT_MAX_AGE = 24 * 60 * 60;
+
+    // Plugin is asked to answer this long before it gets killed, so it can still report partial results
+    public static final int PLUGIN_DEADLINE_MARGIN = 2;
+
+    // Longest a plugin request may wait in its lane before it is dropped, senders wait this much on top of plugin timeout
+    public static final int POLLING_LANE_QUEUE_TIMEOUT = 60;
+
+    public static final int DISCOVERY_LANE_QUEUE_TIMEOUT = 300;
+
+    // Extra time senders give plugin verticle to reply after plugin timeout, covers killing plugin and building timeout response
+    public static final int PLUGIN_REPLY_MARGIN = 5;
+
+    // ====== Time ( in milliseconds ) =====
+    public static final long SCHEDULER_TICK_MILLIS = 100;
+
+    // Partial credential check batch is sent once its first ip waited this long
+    public static final long DISCOVERY_CREDENTIAL_BATCH_DELAY_MILLIS = 200;
+
+    // Time one strategy gets per host
+    public static final int REACHABILITY_PROBE_TIMEOUT_MILLIS = 1000;
 }
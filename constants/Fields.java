@@ -70,6 +70,8 @@ public class Fields
         public static final String SUCCESS = "success";
 
         public static final String FAILURE = "failed";
+
+        public static final String OPEN_PORTS = "open_ports";
     }
 
     public static class DiscoveryCredential
@@ -111,6 +113,8 @@ public class Fields
         public static final String CREDENTIAL_JSON = "credential";
 
         public static final String METRIC_GROUP_JSON = "metric_group";
+
+        public static final String CIRCUIT_BREAKER = "circuit_breaker";
     }
 
     public static class MetricGroup
@@ -180,6 +184,8 @@ public class Fields
 
         public static final String METRIC_GROUPS = "metric_groups";
 
+        public static final String DEVICES = "devices";
+
         public static final String MONITOR_ID = "monitor_id";
 
         public static final String IP = "ip";
@@ -197,11 +203,49 @@ public class Fields
 
         public static final String METRIC_GROUPS = "metric_groups";
 
+        public static final String DEVICES = "devices";
+
         public static final String DATA = "data";
 
         public static final String NAME = "name";
     }
 
+    public static class PluginWorker
+    {
+        public static final String REQUEST_ID = "request_id";
+
+        public static final String TYPE = "type";
+
+        public static final String HEALTH = "health";
+
+        // Sent when a request timed out, worker stops its work and does not answer it
+        public static final String CANCEL = "cancel";
+
+        public static final String ENCODING = "encoding";
+
+        public static final String JSON = "json";
+
+        public static final String MSGPACK = "msgpack";
+    }
+
+    public static class PluginStream
+    {
+        public static final String STREAM = "stream";
+
+        public static final String STREAMED = "streamed";
+    }
+
+    public static class PluginTimeout
+    {
+        public static final String ITEM_TIMEOUT = "item_timeout";
+
+        public static final String DEADLINE = "deadline";
+
+        public static final String STATUS = "status";
+
+        public static final String TIMEOUT_STATUS = "TIMEOUT";
+    }
+
     public static class MonitorCache
     {
         public static final String ID = "id";
@@ -227,6 +271,16 @@ public class Fields
 
         public static final String RUN_DISCOVERY_ADDRESS = "discovery";
 
+        public static final String SCHEDULER_RESCHEDULE_ADDRESS = "scheduler.reschedule";
+
+        public static final String SCHEDULER_METRIC_GROUPS_DELETED_ADDRESS = "scheduler.metric.groups.deleted";
+
+        public static final String CREDENTIAL_CHANGED_ADDRESS = "credential.changed";
+
+        public static final String PLUGIN_POLLING_RESULT_ADDRESS = "plugin.result.polling";
+
+        public static final String PLUGIN_DISCOVERY_RESULT_ADDRESS = "plugin.result.discovery";
+
         public static final String EXECUTE_SQL_QUERY_ADDRESS = "database.execute.sql";
 
         public static final String EXECUTE_SQL_QUERY_WITH_PARAMS_ADDRESS = "database.execute.sql.params";
@@ -335,6 +335,17 @@ public class Queries
             );
             """;
 
+        // Added separately so existing databases get the column too
+        public static final String ADD_LAST_POLLED_AT_COLUMN = """
+            ALTER TABLE metric_group ADD COLUMN IF NOT EXISTS last_polled_at TIMESTAMP WITH TIME ZONE;
+            """;
+
+        public static final String UPDATE_LAST_POLLED_AT = """
+            UPDATE metric_group
+                SET last_polled_at = CURRENT_TIMESTAMP
+            WHERE monitor_id = $1 AND name = $2;
+            """;
+
         public static final String GET_BY_ID = """
             SELECT p.id, p.ip, p.port,
                    json_build_object(
@@ -405,7 +416,7 @@ public class Queries
             ),
             inserted_metrics AS (
                 INSERT INTO metric_group (monitor_id, name, polling_interval)
-                SELECT p.id, m.name,"""+ Config.SCHEDULER_CHECKING_INTERVAL + """
+                SELECT p.id, m.name,"""+ Config.DEFAULT_POLLING_INTERVAL + """
                 FROM inserted_monitor p
                 CROSS JOIN metric_group_names m
                 RETURNING *
@@ -40,6 +40,7 @@ public class Database extends AbstractVerticle
 
             vertx.eventBus().localConsumer(Fields.EventBus.EXECUTE_SQL_QUERY_BATCH_ADDRESS, this::handleExecuteSqlBatch);
 
+            // Column changes run once all tables exist
             Future.join(List.of(
                     DbUtils.sendQueryExecutionRequest(Queries.User.CREATE_SCHEMA),
                     DbUtils.sendQueryExecutionRequest(Queries.Credential.CREATE_SCHEMA),
@@ -49,19 +50,21 @@ public class Database extends AbstractVerticle
                     DbUtils.sendQueryExecutionRequest(Queries.Monitor.CREATE_SCHEMA),
                     DbUtils.sendQueryExecutionRequest(Queries.Monitor.CREATE_METRIC_GROUP_SCHEMA),
                     DbUtils.sendQueryExecutionRequest(Queries.PollingResult.CREATE_SCHEMA)
-            )).onComplete(allSchemasCreated ->
-            {
-                if(allSchemasCreated.succeeded())
-                {
-                    LOGGER.info("✅ Successfully deployed Database Verticle");
-
-                    startPromise.complete();
-                }
-                else
-                {
-                    LOGGER.warn("⚠ Something went wrong creating db schema");
-                }
-            });
+            ))
+                    .compose(allSchemas -> DbUtils.sendQueryExecutionRequest(Queries.Monitor.ADD_LAST_POLLED_AT_COLUMN))
+                    .onComplete(allSchemasCreated ->
+                    {
+                        if(allSchemasCreated.succeeded())
+                        {
+                            LOGGER.info("✅ Successfully deployed Database Verticle");
+
+                            startPromise.complete();
+                        }
+                        else
+                        {
+                            LOGGER.warn("⚠ Something went wrong creating db schema");
+                        }
+                    });
         }
         catch (Exception exception)
         {
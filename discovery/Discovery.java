@@ -1,26 +1,28 @@
 package org.nms.discovery;
 
-import inet.ipaddr.IPAddressString;
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import static org.nms.App.LOGGER;
 
-import io.vertx.core.net.NetClientOptions;
 import io.vertx.sqlclient.Tuple;
-import org.nms.App;
-import org.nms.validators.Validators;
 import org.nms.constants.Config;
 import org.nms.constants.Fields;
 import org.nms.constants.Queries;
+import org.nms.plugin.ExecutionLane;
 import org.nms.utils.DbUtils;
+import org.nms.utils.ProcessUtils;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 import static org.nms.constants.Fields.Discovery.*;
 import static org.nms.constants.Fields.Discovery.SUCCESS;
@@ -28,10 +30,46 @@ import static org.nms.constants.Fields.DiscoveryResult.MESSAGE;
 
 public class Discovery extends AbstractVerticle
 {
+    // Running discovery id -> inserts of credential check results streamed by plugin, awaited before discovery completes
+    private final HashMap<Integer, List<Future<Void>>> streamedResultInserts = new HashMap<>();
+
+    private PortScanner portScanner;
+
+    // fping processes of all discoveries together
+    private final ExecutionLane fpingLane = new ExecutionLane("fping", Config.FPING_MAX_PROCESSES, Integer.MAX_VALUE);
+
+    // Set when reachability is checked from inside JVM instead of fping
+    private ReachabilityProber reachabilityProber;
 
     @Override
     public void start()
     {
+        portScanner = new PortScanner(vertx, Config.PORT_SCAN_MAX_IN_FLIGHT, Config.PORT_SCAN_RATE);
+
+        if ("PROBER".equalsIgnoreCase(Config.REACHABILITY_ENGINE))
+        {
+            reachabilityProber = ReachabilityProber.fromConfig();
+        }
+
+        vertx.eventBus().<JsonObject>localConsumer(Fields.EventBus.PLUGIN_DISCOVERY_RESULT_ADDRESS, message ->
+        {
+            var result = message.body();
+
+            var id = result.getInteger(Fields.PluginDiscoveryResponse.ID);
+
+            var inserts = streamedResultInserts.get(id);
+
+            // Plugin may go on streaming after its request timed out, discovery has completed by then
+            if (inserts == null)
+            {
+                LOGGER.debug("Dropped streamed result of completed discovery with id " + id);
+
+                return;
+            }
+
+            inserts.add(processCredentialCheckResults(id, new JsonArray().add(result)));
+        });
+
         vertx.eventBus().<JsonObject>localConsumer(Fields.EventBus.RUN_DISCOVERY_ADDRESS, message ->
         {
             var body =  message.body();
@@ -54,6 +92,13 @@ public class Discovery extends AbstractVerticle
     @Override
     public void stop()
     {
+        portScanner.close();
+
+        if (reachabilityProber != null)
+        {
+            reachabilityProber.close();
+        }
+
         LOGGER.info("\uD83D\uDED1 Discovery Verticle Stopped");
     }
 
@@ -89,9 +134,9 @@ public class Discovery extends AbstractVerticle
 
                                 var credentials = discovery.getJsonArray(Fields.Discovery.CREDENTIAL_JSON);
 
-                                var ips = getIpsFromString(ipStr, ipType);
+                                var range = IpRange.parse(ipStr, ipType);
 
-                                return executeDiscoverySteps(id, ips, port, credentials);
+                                return executeDiscoverySteps(id, range != null ? range.iterator() : Collections.emptyIterator(), port, credentials);
                             });
                 })
 
@@ -118,70 +163,98 @@ public class Discovery extends AbstractVerticle
         return Future.succeededFuture();
     }
 
-    private Future<Void> executeDiscoverySteps(int id, JsonArray ips, int port, JsonArray credentials)
+    private Future<Void> executeDiscoverySteps(int id, Iterator<String> ips, int port, JsonArray credentials)
     {
-        Promise<Void> promise = Promise.promise();
+        streamedResultInserts.put(id, new ArrayList<>());
 
-        // Step 1: Ping Check - directly call without event bus
-        pingIps(ips)
-                .compose(pingResults ->
-                {
-                    var pingPassedIps = insertPingResults(id, pingResults);
+        var pipeline = new DiscoveryPipeline(vertx, id, port, portScanner, batch -> checkCredentials(id, batch, port, credentials));
 
-                    // Step 2: Port Check - directly call without event bus
-                    return checkPorts(pingPassedIps, port)
+        feedPipeline(pipeline, ips);
 
-                            .compose(portResults ->
-                            {
-                                var portPassedIps = insertPortCheckResults(id, portResults);
+        return pipeline.completion().compose(v -> awaitStreamedResults(id));
+    }
 
-                                // Step 3: Credentials Check - only for IPs that passed port check
-                                if (portPassedIps.isEmpty())
-                                {
-                                    LOGGER.info("No IPs passed port check for discovery with id " + id);
+    // Step 1: Ping Check over several chunks at once, every result goes on to port and credential checks as soon as it is read
+    private void feedPipeline(DiscoveryPipeline pipeline, Iterator<String> ips)
+    {
+        var feeders = new ArrayList<Future<Void>>();
 
-                                    return Future.succeededFuture();
-                                }
+        for (var i = 0; i < Config.DISCOVERY_PARALLEL_CHUNKS; i++)
+        {
+            feeders.add(pingChunks(pipeline, ips));
+        }
 
-                                // Prepare plugin discovery request
-                                var discoveryRequest = new JsonObject()
-                                        .put(Fields.PluginDiscoveryRequest.TYPE, Fields.PluginDiscoveryRequest.DISCOVERY)
+        Future.join(feeders).onComplete(asyncResult -> pipeline.inputDone());
+    }
 
-                                        .put(Fields.PluginDiscoveryRequest.ID, id)
+    // Pings next chunk once previous one is done and pipeline has room for more, until range is exhausted
+    private Future<Void> pingChunks(DiscoveryPipeline pipeline, Iterator<String> ips)
+    {
+        if (!ips.hasNext())
+        {
+            return Future.succeededFuture();
+        }
 
-                                        .put(Fields.PluginDiscoveryRequest.IPS, portPassedIps)
+        var chunk = new JsonArray();
 
-                                        .put(Fields.PluginDiscoveryRequest.PORT, port)
+        while (ips.hasNext() && chunk.size() < Config.DISCOVERY_CHUNK_SIZE)
+        {
+            chunk.add(ips.next());
+        }
 
-                                        .put(Fields.PluginDiscoveryRequest.CREDENTIALS, credentials);
+        var pingCheck = reachabilityProber != null
+                ? reachabilityProber.probe(chunk, pipeline::offer)
+                : fpingLane.submit(() -> pingIps(chunk, pipeline::offer));
 
+        return pingCheck
+                .transform(asyncResult -> pipeline.awaitCapacity())
+                .compose(v -> pingChunks(pipeline, ips));
+    }
 
-                                // Send discovery request to plugin via event bus
-                                return sendDiscoveryRequestToPlugin(discoveryRequest)
-                                        .compose(asyncResult -> processCredentialCheckResults(id, asyncResult));
-                            });
-                })
+    // Step 3: Credentials Check of a batch of ips which passed port check
+    private Future<Void> checkCredentials(int id, JsonArray ips, int port, JsonArray credentials)
+    {
+        var discoveryRequest = new JsonObject()
+                .put(Fields.PluginDiscoveryRequest.TYPE, Fields.PluginDiscoveryRequest.DISCOVERY)
 
-                .onComplete(asyncResult ->
-                {
-                    if (asyncResult.succeeded())
-                    {
-                        promise.complete();
-                    }
-                    else
-                    {
-                        promise.fail(asyncResult.cause());
-                    }
-                });
+                .put(Fields.PluginDiscoveryRequest.ID, id)
 
-        return promise.future();
+                .put(Fields.PluginDiscoveryRequest.IPS, ips)
+
+                .put(Fields.PluginDiscoveryRequest.PORT, port)
+
+                .put(Fields.PluginDiscoveryRequest.CREDENTIALS, credentials);
+
+        // Send discovery request to plugin via event bus
+        return sendDiscoveryRequestToPlugin(discoveryRequest)
+                .compose(results -> processCredentialCheckResults(id, results));
+    }
+
+    // Every credential check request got its reply, successful ones after all their streamed results, only inserts may still be running.
+    // A failed request may still stream, results arriving after this are dropped by result consumer
+    private Future<Void> awaitStreamedResults(int id)
+    {
+        var inserts = streamedResultInserts.remove(id);
+
+        if (inserts == null)
+        {
+            return Future.succeededFuture();
+        }
+
+        return Future.join(inserts).mapEmpty();
     }
 
     private Future<JsonArray> sendDiscoveryRequestToPlugin(JsonObject request)
     {
         Promise<JsonArray> promise = Promise.promise();
 
-        vertx.eventBus().<JsonObject>request(Fields.EventBus.PLUGIN_SPAWN_ADDRESS, request, reply ->
+        var ips = request.getJsonArray(Fields.PluginDiscoveryRequest.IPS, new JsonArray());
+
+        // Same timeout plugin gives the request, plus time it may wait in discovery lane and a margin for the reply
+        var timeout = Config.BASE_TIME + (ips.size() * Config.DISCOVERY_TIMEOUT_PER_IP)
+                + Config.DISCOVERY_LANE_QUEUE_TIMEOUT + Config.PLUGIN_REPLY_MARGIN;
+
+        vertx.eventBus().<JsonObject>request(Fields.EventBus.PLUGIN_SPAWN_ADDRESS, request, new DeliveryOptions().setSendTimeout(timeout * 1000L), reply ->
         {
             if (reply.succeeded())
             {
@@ -252,72 +325,6 @@ public class Discovery extends AbstractVerticle
         return promise.future();
     }
 
-    private JsonArray insertPingResults(int id, JsonArray pingResults)
-    {
-        var pingCheckPassedIps = new JsonArray();
-
-        var pingCheckFailedIps = new ArrayList<Tuple>();
-
-        for (var i = 0; i < pingResults.size(); i++)
-        {
-            var result = pingResults.getJsonObject(i);
-
-            var success = result.getBoolean(Fields.Discovery.SUCCESS);
-
-            var ip = result.getString(Fields.Discovery.IP);
-
-            if (success)
-            {
-                pingCheckPassedIps.add(ip);
-            }
-            else
-            {
-                pingCheckFailedIps.add(Tuple.of(id, null, ip, result.getString(Fields.DiscoveryResult.MESSAGE), Fields.Discovery.FAILED_STATUS));
-            }
-        }
-
-        // Insert failed IPs if any
-        if (!pingCheckFailedIps.isEmpty())
-        {
-            DbUtils.sendQueryExecutionRequest(Queries.Discovery.INSERT_RESULT, pingCheckFailedIps);
-        }
-
-        return pingCheckPassedIps;
-    }
-
-    private JsonArray insertPortCheckResults(int id, JsonArray portCheckResults)
-    {
-        var portCheckPassedIps = new JsonArray();
-
-        var portCheckFailedIps = new ArrayList<Tuple>();
-
-        for (int i = 0; i < portCheckResults.size(); i++)
-        {
-            var result = portCheckResults.getJsonObject(i);
-
-            var success = result.getBoolean(Fields.Discovery.SUCCESS);
-
-            var ip = result.getString(Fields.Discovery.IP);
-
-            if (success)
-            {
-                portCheckPassedIps.add(ip);
-            }
-            else
-            {
-                portCheckFailedIps.add(Tuple.of(id, null, ip, result.getString(Fields.DiscoveryResult.MESSAGE), Fields.DiscoveryResult.FAILED_STATUS));
-            }
-        }
-
-        // Insert failed IPs if any
-        if (!portCheckFailedIps.isEmpty())
-        {
-            DbUtils.sendQueryExecutionRequest(Queries.Discovery.INSERT_RESULT, portCheckFailedIps);
-        }
-
-        return portCheckPassedIps;
-    }
-
     private Future<Void> processCredentialCheckResults(int id, JsonArray credentialCheckResults)
     {
         var credentialCheckFailedIps = new ArrayList<Tuple>();
@@ -360,279 +367,98 @@ public class Discovery extends AbstractVerticle
                 .compose(v -> Future.succeededFuture());
     }
 
-    private JsonArray getIpsFromString(String ip, String ipType)
+    /**
+     * Pings ips with one fping process, hands every result to consumer on this verticle's event loop as soon as fping prints it.
+     * Ips without a line when fping exits or is killed are handed over as failed, completes after every ip got its result.
+     */
+    private Future<Void> pingIps(JsonArray ips, Consumer<JsonObject> onResult)
     {
-        var ips = new JsonArray();
-
-        if (Validators.validateIpWithIpType(ip, ipType))
-        {
-            return ips;
-        }
-
-        try
-        {
-            if ("RANGE".equalsIgnoreCase(ipType))
-            {
-                var parts = ip.split("-");
-
-                var startIp = new IPAddressString(parts[0].trim()).getAddress();
-
-                var endIp = new IPAddressString(parts[1].trim()).getAddress();
-
-                var address = startIp.toSequentialRange(endIp);
-
-                address.getIterable().forEach(ipAddress -> ips.add(ipAddress.toString()));
-            }
-            else if ("CIDR".equalsIgnoreCase(ipType))
-            {
-                new IPAddressString(ip)
-                        .getSequentialRange()
-                        .getIterable()
-                        .forEach(ipAddress -> ips.add(ipAddress.toString()));
-            }
-            else if ("SINGLE".equalsIgnoreCase(ipType))
-            {
-                var singleAddr = new IPAddressString(ip).getAddress();
-
-                ips.add(singleAddr.toString());
-            }
-
-            return ips;
-        }
-        catch (Exception exception)
-        {
-            LOGGER.error("Failed to convert ip string to JsonArray of ip, error: " + exception.getMessage() );
-
-            return new JsonArray();
-        }
-    }
-
-    private Future<JsonArray> pingIps(JsonArray ips)
-    {
-        // Early validation - outside executeBlocking
         if (ips == null || ips.isEmpty())
         {
-            return Future.succeededFuture(new JsonArray());
+            return Future.succeededFuture();
         }
 
         LOGGER.debug("ping check request for ips: " + ips.encode());
 
-        // Prepare fping command - outside executeBlocking
+        // One line per ip, "<ip> is alive" or "<ip> is unreachable", printed as soon as it is known
         var command = new String[ips.size() + 3];
         command[0] = "fping";
-        command[1] = "-c1";
-        command[2] = "-q";
+        command[1] = "-r";
+        command[2] = String.valueOf(Config.FPING_RETRIES);
 
         for (var i = 0; i < ips.size(); i++)
         {
             command[i + 3] = ips.getString(i);
         }
 
-        // execute the blocking ping operation within executeBlocking
-        return App.VERTX.executeBlocking(promise ->
-        {
-            var results = new JsonArray();
-
-            Process process = null;
-
-            BufferedReader reader = null;
-
-            try
-            {
-                var processBuilder = new ProcessBuilder(command);
-
-                processBuilder.redirectErrorStream(true);
-
-                process = processBuilder.start();
-
-                // Process timeout
-                var completed = process.waitFor(Config.BASE_TIME + (Config.DISCOVERY_TIMEOUT_PER_IP * ips.size()), TimeUnit.SECONDS);
+        // fping prints its errors on stderr
+        var processBuilder = new ProcessBuilder(command).redirectErrorStream(true);
 
-                if (!completed)
-                {
-                    process.destroyForcibly();
-
-                    promise.complete(createErrorResultForAll(ips, "Ping process timed out"));
-
-                    return;
-                }
-
-                reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        // Filled on reader thread, complete once process future completes
+        var processedIps = ConcurrentHashMap.<String>newKeySet();
 
-                String line;
-
-                var processedIps = new JsonArray();
-
-                while ((line = reader.readLine()) != null)
+        return ProcessUtils.execute(processBuilder, Config.BASE_TIME + (Config.DISCOVERY_TIMEOUT_PER_IP * ips.size()), line ->
                 {
-                    var parts = line.split(":");
+                    var result = parsePingLine(line);
 
-                    if (parts.length < 2)
+                    if (result == null || !processedIps.add(result.getString(IP)))
                     {
-                        continue;
+                        return false;
                     }
 
-                    var ip = parts[0].trim();
-
-                    var stats = parts[1].trim();
+                    // Runs before process future completes, both go through same event loop in order
+                    context.runOnContext(v -> onResult.accept(result));
 
-                    processedIps.add(ip);
-
-                    var isSuccess = !stats.contains("100%");
-
-                    var result = new JsonObject()
-                            .put(SUCCESS, isSuccess)
-                            .put(IP, ip)
-                            .put(MESSAGE,
-                                    isSuccess
-                                            ? "Ping check success"
-                                            : "Ping check failed: 100% packet loss");
-
-                    results.add(result);
-                }
-
-                // Handle unprocessed IPs
-                for (var i = 0; i < ips.size(); i++)
+                    return true;
+                })
+                .map(processResult -> processResult.timedOut() ? "Ping process timed out" : "No response from fping")
+                .otherwise(failure ->
                 {
-                    var ip = ips.getString(i);
+                    LOGGER.error("Error during ping check: " + failure.getMessage());
 
-                    if (!processedIps.contains(ip))
-                    {
-                        results.add(createErrorResult(ip, "No response from fping"));
-                    }
-                }
-
-                LOGGER.debug("ping check passed ips: " + results.encode());
-
-                promise.complete(results);
-            }
-            catch (Exception exception)
-            {
-                LOGGER.error("Error during ping check: " + exception.getMessage());
-
-                promise.complete(createErrorResultForAll(ips, "Error during ping check"));
-            }
-            finally
-            {
-                closeQuietly(reader);
-
-                if (process != null && process.isAlive())
+                    return "Error during ping check";
+                })
+                .map(message ->
                 {
-                    try
-                    {
-                        process.destroyForcibly();
-                    }
-                    catch (Exception exception)
+                    for (var i = 0; i < ips.size(); i++)
                     {
-                        LOGGER.error("Error destroying ping process: " + exception.getMessage());
+                        var ip = ips.getString(i);
+
+                        if (!processedIps.contains(ip))
+                        {
+                            onResult.accept(createErrorResult(ip, message));
+                        }
                     }
-                }
-            }
-        });
+
+                    return null;
+                });
     }
 
-    private Future<JsonArray> checkPorts(JsonArray ips, int port)
+    private JsonObject parsePingLine(String line)
     {
-        var promise = Promise.<JsonArray>promise();
-
-        var results = new JsonArray();
-
-        var futures = new ArrayList<Future<JsonObject>>();
+        var separator = line.indexOf(" is ");
 
-        if (ips == null || ips.isEmpty() || port < 1 || port > 65535)
+        if (separator < 1)
         {
-            promise.complete(results);
-
-            return promise.future();
+            return null;
         }
 
-        LOGGER.debug("port check request for ips: " + ips.encode());
+        var status = line.substring(separator + 4).trim();
 
-        for (var ip : ips)
+        if (!"alive".equals(status) && !"unreachable".equals(status))
         {
-            var checkPortPromise = Promise.<JsonObject>promise();
-
-            futures.add(checkPortPromise.future());
-
-            var result = new JsonObject()
-                    .put(IP, ip.toString())
-                    .put(PORT, port);
-
-            try
-            {
-                App.VERTX.createNetClient(new NetClientOptions().setConnectTimeout(Config.PORT_TIMEOUT * 1000))
-                        .connect(port, ip.toString(), asyncResult ->
-                        {
-                            try
-                            {
-                                if (asyncResult.succeeded())
-                                {
-                                    var socket = asyncResult.result();
-
-                                    result.put(SUCCESS, true)
-                                            .put(MESSAGE, "Port " + port + " is open on " + ip);
-
-                                    socket.close();
-                                }
-                                else
-                                {
-                                    var cause = asyncResult.cause();
-
-                                    var errorMessage = cause != null ? cause.getMessage() : "Unknown error";
-
-                                    result.put(SUCCESS, false)
-                                            .put(MESSAGE,
-                                                    errorMessage.contains("Connection refused")
-                                                            ? "Port " + port + " is closed on " + ip
-                                                            : errorMessage);
-                                }
-                            }
-                            catch (Exception exception)
-                            {
-                                result
-                                        .put(SUCCESS, false)
-                                        .put(MESSAGE, "Something went wrong");
-
-                                LOGGER.error("Something went wrong, error: " + exception.getMessage());
-                            }
-                            finally
-                            {
-                                results.add(result);
-
-                                checkPortPromise.complete(result);
-                            }
-                        });
-            }
-            catch (Exception exception)
-            {
-                result
-                        .put(SUCCESS, false)
-                        .put(MESSAGE, "Error creating connection: " + exception.getMessage());
-                results
-                        .add(result);
-
-                checkPortPromise.complete(result);
-            }
+            return null;
         }
 
-        Future.all(futures)
-                .onComplete(asyncResult ->
-                {
-                    if (asyncResult.succeeded())
-                    {
-                        LOGGER.debug("Port check passed ips: " + results.encode());
-
-                        promise.complete(results);
-                    }
-                    else
-                    {
-                        LOGGER.error("Error in port check: " + asyncResult.cause().getMessage());
+        var isSuccess = "alive".equals(status);
 
-                        promise.complete(results);
-                    }
-                });
-
-        return promise.future();
+        return new JsonObject()
+                .put(SUCCESS, isSuccess)
+                .put(IP, line.substring(0, separator).trim())
+                .put(MESSAGE,
+                        isSuccess
+                                ? "Ping check success"
+                                : "Ping check failed: host unreachable");
     }
 
     private JsonObject createErrorResult(String ip, String message)
@@ -642,36 +468,4 @@ public class Discovery extends AbstractVerticle
                 .put(Fields.Discovery.SUCCESS, false)
                 .put(Fields.DiscoveryResult.MESSAGE, message);
     }
-
-    private JsonArray createErrorResultForAll(JsonArray ipArray, String message)
-    {
-        var results = new JsonArray();
-
-        if (ipArray != null)
-        {
-            for (var i = 0; i < ipArray.size(); i++)
-            {
-                var ip = String.valueOf(ipArray.getValue(i));
-
-                results.add(createErrorResult(ip, message));
-            }
-        }
-        return results;
-    }
-
-    private void closeQuietly(AutoCloseable closeable)
-    {
-        if (closeable != null)
-        {
-            try
-            {
-                closeable.close();
-            }
-            catch (Exception exception)
-            {
-                LOGGER.error("Error closing resource: " + exception.getMessage());
-            }
-        }
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,287 @@
+package org.nms.discovery;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.sqlclient.Tuple;
+
+import static org.nms.App.LOGGER;
+import org.nms.constants.Config;
+import org.nms.constants.Fields;
+import org.nms.constants.Queries;
+import org.nms.utils.DbUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Stages of one discovery run without barriers between them: every ip that passed ping is port checked right away,
+ * ips that passed port check are sent to credential check in micro batches, so no ip waits for slowest ip of a stage.
+ * Failed ping and port check results are stored in batches. Confined to discovery verticle's event loop, not thread safe.
+ */
+class DiscoveryPipeline
+{
+    private final Vertx vertx;
+
+    private final int id;
+
+    private final int port;
+
+    private final PortScanner portScanner;
+
+    // Checks credentials of a batch of ips and stores results
+    private final Function<JsonArray, Future<Void>> credentialCheck;
+
+    private final Promise<Void> completion = Promise.promise();
+
+    private final ArrayDeque<JsonArray> readyBatches = new ArrayDeque<>();
+
+    private final List<Future<?>> pendingWrites = new ArrayList<>();
+
+    private JsonArray openBatch = new JsonArray();
+
+    private ArrayList<Tuple> failedResults = new ArrayList<>();
+
+    private long batchTimerId = -1L;
+
+    private int portChecksInFlight;
+
+    // Ips past ping whose port or credential check is not done yet
+    private int ipsInProgress;
+
+    // Feeders waiting for ips in progress to drop
+    private final List<Promise<Void>> capacityWaiters = new ArrayList<>();
+
+    private int batchesInFlight;
+
+    private int batchesSent;
+
+    private boolean inputDone;
+
+    DiscoveryPipeline(Vertx vertx, int id, int port, PortScanner portScanner, Function<JsonArray, Future<Void>> credentialCheck)
+    {
+        this.vertx = vertx;
+
+        this.id = id;
+
+        this.port = port;
+
+        this.portScanner = portScanner;
+
+        this.credentialCheck = credentialCheck;
+    }
+
+    /**
+     * Takes ping result of one ip
+     */
+    void offer(JsonObject pingResult)
+    {
+        var ip = pingResult.getString(Fields.Discovery.IP);
+
+        if (!pingResult.getBoolean(Fields.Discovery.SUCCESS, false))
+        {
+            fail(ip, pingResult.getString(Fields.DiscoveryResult.MESSAGE));
+
+            return;
+        }
+
+        if (port < 1 || port > 65535)
+        {
+            fail(ip, "Invalid port " + port);
+
+            return;
+        }
+
+        portChecksInFlight++;
+
+        ipsInProgress++;
+
+        portScanner.scan(ip, List.of(port)).onComplete(asyncResult ->
+        {
+            portChecksInFlight--;
+
+            var portResult = asyncResult.result();
+
+            if (portResult.getBoolean(Fields.Discovery.SUCCESS))
+            {
+                addToBatch(ip);
+            }
+            else
+            {
+                fail(ip, portResult.getString(Fields.DiscoveryResult.MESSAGE));
+
+                finished(1);
+            }
+
+            completeIfDone();
+        });
+    }
+
+    /**
+     * No more ping results will be offered, remaining ips are flushed as they finish
+     */
+    void inputDone()
+    {
+        inputDone = true;
+
+        completeIfDone();
+    }
+
+    Future<Void> completion()
+    {
+        return completion.future();
+    }
+
+    /**
+     * Completes once few enough ips are in progress to take next chunk, keeps memory bounded however large range is
+     */
+    Future<Void> awaitCapacity()
+    {
+        if (ipsInProgress < Config.DISCOVERY_MAX_IPS_IN_PROGRESS)
+        {
+            return Future.succeededFuture();
+        }
+
+        var capacity = Promise.<Void>promise();
+
+        capacityWaiters.add(capacity);
+
+        return capacity.future();
+    }
+
+    private void finished(int ips)
+    {
+        ipsInProgress -= ips;
+
+        if (!capacityWaiters.isEmpty() && ipsInProgress < Config.DISCOVERY_MAX_IPS_IN_PROGRESS)
+        {
+            var waiters = new ArrayList<>(capacityWaiters);
+
+            capacityWaiters.clear();
+
+            waiters.forEach(Promise::complete);
+        }
+    }
+
+    private void addToBatch(String ip)
+    {
+        openBatch.add(ip);
+
+        if (openBatch.size() >= Config.DISCOVERY_CREDENTIAL_BATCH_SIZE)
+        {
+            closeBatch();
+        }
+        else if (batchTimerId == -1L)
+        {
+            batchTimerId = vertx.setTimer(Config.DISCOVERY_CREDENTIAL_BATCH_DELAY_MILLIS, timerId ->
+            {
+                batchTimerId = -1L;
+
+                closeBatch();
+            });
+        }
+    }
+
+    private void closeBatch()
+    {
+        if (batchTimerId != -1L)
+        {
+            vertx.cancelTimer(batchTimerId);
+
+            batchTimerId = -1L;
+        }
+
+        if (!openBatch.isEmpty())
+        {
+            readyBatches.addLast(openBatch);
+
+            openBatch = new JsonArray();
+        }
+
+        dispatchBatches();
+    }
+
+    private void dispatchBatches()
+    {
+        while (!readyBatches.isEmpty() && batchesInFlight < Config.DISCOVERY_MAX_IN_FLIGHT_BATCHES)
+        {
+            var batch = readyBatches.pollFirst();
+
+            batchesInFlight++;
+
+            batchesSent++;
+
+            LOGGER.debug("Credential check batch of " + batch.size() + " ips for discovery with id " + id);
+
+            credentialCheck.apply(batch).onComplete(asyncResult ->
+            {
+                batchesInFlight--;
+
+                finished(batch.size());
+
+                if (asyncResult.failed())
+                {
+                    LOGGER.error("Error in credential check for discovery with id " + id + ": " + asyncResult.cause().getMessage());
+                }
+
+                dispatchBatches();
+
+                completeIfDone();
+            });
+        }
+    }
+
+    private void fail(String ip, String message)
+    {
+        failedResults.add(Tuple.of(id, null, ip, message, Fields.DiscoveryResult.FAILED_STATUS));
+
+        if (failedResults.size() >= Config.DISCOVERY_RESULT_INSERT_BATCH_SIZE)
+        {
+            flushFailedResults();
+        }
+    }
+
+    private void flushFailedResults()
+    {
+        if (!failedResults.isEmpty())
+        {
+            pendingWrites.add(DbUtils.sendQueryExecutionRequest(Queries.Discovery.INSERT_RESULT, failedResults));
+
+            failedResults = new ArrayList<>();
+        }
+    }
+
+    private void completeIfDone()
+    {
+        if (!inputDone || portChecksInFlight > 0 || completion.future().isComplete())
+        {
+            return;
+        }
+
+        // Nothing can join open batch anymore, send it without waiting for its timer, its completion checks again
+        if (!openBatch.isEmpty())
+        {
+            closeBatch();
+
+            return;
+        }
+
+        if (!readyBatches.isEmpty() || batchesInFlight > 0)
+        {
+            return;
+        }
+
+        flushFailedResults();
+
+        if (batchesSent == 0)
+        {
+            LOGGER.info("No IPs passed port check for discovery with id " + id);
+        }
+
+        Future.join(pendingWrites).onComplete(asyncResult -> completion.tryComplete());
+    }
+}
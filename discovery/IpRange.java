@@ -0,0 +1,155 @@
+package org.nms.discovery;
+
+import inet.ipaddr.IPAddressSeqRange;
+import inet.ipaddr.IPAddressString;
+import inet.ipaddr.ipv6.IPv6Address;
+
+import static org.nms.App.LOGGER;
+import org.nms.validators.Validators;
+
+import java.math.BigInteger;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Sequential range of ip addresses of a discovery, addresses are produced one by one when iterated and never held all at once.
+ * IPv4 is walked with a long cursor and formatted directly, IPv6 with a BigInteger cursor.
+ */
+public class IpRange implements Iterable<String>
+{
+    private final BigInteger start;
+
+    private final BigInteger end;
+
+    private final boolean ipv4;
+
+    private IpRange(BigInteger start, BigInteger end, boolean ipv4)
+    {
+        this.start = start;
+
+        this.end = end;
+
+        this.ipv4 = ipv4;
+    }
+
+    /**
+     * Parses ip of a discovery by its ip type ( SINGLE, RANGE or CIDR ), returns null if it is not valid
+     */
+    public static IpRange parse(String ip, String ipType)
+    {
+        if (Validators.validateIpWithIpType(ip, ipType))
+        {
+            return null;
+        }
+
+        try
+        {
+            IPAddressSeqRange range;
+
+            if ("RANGE".equalsIgnoreCase(ipType))
+            {
+                var parts = ip.split("-");
+
+                range = new IPAddressString(parts[0].trim()).getAddress()
+                        .toSequentialRange(new IPAddressString(parts[1].trim()).getAddress());
+            }
+            else if ("CIDR".equalsIgnoreCase(ipType))
+            {
+                range = new IPAddressString(ip).getSequentialRange();
+            }
+            else
+            {
+                var address = new IPAddressString(ip).getAddress();
+
+                range = address.toSequentialRange(address);
+            }
+
+            return new IpRange(range.getLower().getValue(), range.getUpper().getValue(), range.getLower().isIPv4());
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("Failed to parse ip range " + ip + ", error: " + exception.getMessage());
+
+            return null;
+        }
+    }
+
+    public BigInteger count()
+    {
+        return end.subtract(start).add(BigInteger.ONE);
+    }
+
+    @Override
+    public Iterator<String> iterator()
+    {
+        return ipv4 ? new Ipv4Iterator(start.longValue(), end.longValue()) : new Ipv6Iterator(start, end);
+    }
+
+    private static class Ipv4Iterator implements Iterator<String>
+    {
+        private long next;
+
+        private final long last;
+
+        private Ipv4Iterator(long first, long last)
+        {
+            this.next = first;
+
+            this.last = last;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next <= last;
+        }
+
+        @Override
+        public String next()
+        {
+            if (next > last)
+            {
+                throw new NoSuchElementException();
+            }
+
+            var value = next++;
+
+            return (value >>> 24) + "." + ((value >>> 16) & 0xff) + "." + ((value >>> 8) & 0xff) + "." + (value & 0xff);
+        }
+    }
+
+    private static class Ipv6Iterator implements Iterator<String>
+    {
+        private BigInteger next;
+
+        private final BigInteger last;
+
+        private Ipv6Iterator(BigInteger first, BigInteger last)
+        {
+            this.next = first;
+
+            this.last = last;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            return next.compareTo(last) <= 0;
+        }
+
+        @Override
+        public String next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+
+            var value = next;
+
+            next = next.add(BigInteger.ONE);
+
+            return new IPv6Address(value).toString();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package org.nms.discovery;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetClientOptions;
+
+import org.nms.constants.Config;
+import org.nms.constants.Fields;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TCP connect scanner shared by all discoveries, over one NetClient.
+ * At most PORT_SCAN_MAX_IN_FLIGHT connects are open at once and new ones are started at PORT_SCAN_RATE per second,
+ * rest wait in order of submission. Confined to discovery verticle's event loop, not thread safe.
+ */
+public class PortScanner
+{
+    private record Attempt(String ip, int port, Promise<String> promise) {}
+
+    private final Vertx vertx;
+
+    private final NetClient client;
+
+    private final int maxInFlight;
+
+    private final double ratePerMillisecond;
+
+    // Short bursts allowed after idle time, so a single ip is not delayed
+    private final double maxTokens;
+
+    private final ArrayDeque<Attempt> pending = new ArrayDeque<>();
+
+    private int inFlight;
+
+    private double tokens;
+
+    private long lastRefill = System.currentTimeMillis();
+
+    private long pumpTimerId = -1L;
+
+    public PortScanner(Vertx vertx, int maxInFlight, int ratePerSecond)
+    {
+        this.vertx = vertx;
+
+        this.client = vertx.createNetClient(new NetClientOptions().setConnectTimeout(Config.PORT_TIMEOUT * 1000));
+
+        this.maxInFlight = maxInFlight;
+
+        this.ratePerMillisecond = ratePerSecond / 1000.0;
+
+        this.maxTokens = Math.max(1, ratePerSecond / 10.0);
+
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * Checks ports of one ip, completes with a port check result which is successful if any port is open, never fails
+     */
+    public Future<JsonObject> scan(String ip, List<Integer> ports)
+    {
+        var attempts = new ArrayList<Future<String>>();
+
+        for (var port : ports)
+        {
+            attempts.add(connect(ip, port));
+        }
+
+        return Future.join(attempts).transform(done ->
+        {
+            var openPorts = new JsonArray();
+
+            var messages = new ArrayList<String>();
+
+            for (var i = 0; i < ports.size(); i++)
+            {
+                var failure = attempts.get(i).result();
+
+                if (failure == null)
+                {
+                    openPorts.add(ports.get(i));
+                }
+                else
+                {
+                    messages.add(failure);
+                }
+            }
+
+            var result = new JsonObject()
+                    .put(Fields.Discovery.IP, ip)
+                    .put(Fields.Discovery.PORT, openPorts.isEmpty() ? ports.get(0) : openPorts.getInteger(0))
+                    .put(Fields.Discovery.SUCCESS, !openPorts.isEmpty())
+                    .put(Fields.Discovery.OPEN_PORTS, openPorts)
+                    .put(Fields.DiscoveryResult.MESSAGE, openPorts.isEmpty()
+                            ? String.join(", ", messages)
+                            : "Port " + openPorts.getInteger(0) + " is open on " + ip);
+
+            return Future.succeededFuture(result);
+        });
+    }
+
+    public void close()
+    {
+        vertx.cancelTimer(pumpTimerId);
+
+        pending.forEach(attempt -> attempt.promise().complete("Port scanner closed"));
+
+        pending.clear();
+
+        client.close();
+    }
+
+    // Completes with null when port is open, otherwise with reason
+    private Future<String> connect(String ip, int port)
+    {
+        if (port < 1 || port > 65535)
+        {
+            return Future.succeededFuture("Invalid port " + port);
+        }
+
+        var promise = Promise.<String>promise();
+
+        pending.addLast(new Attempt(ip, port, promise));
+
+        pump();
+
+        return promise.future();
+    }
+
+    private void pump()
+    {
+        var now = System.currentTimeMillis();
+
+        tokens = Math.min(maxTokens, tokens + (now - lastRefill) * ratePerMillisecond);
+
+        lastRefill = now;
+
+        while (!pending.isEmpty() && inFlight < maxInFlight && tokens >= 1)
+        {
+            tokens--;
+
+            start(pending.pollFirst());
+        }
+
+        // Out of tokens, wake up when next one is due, a finishing connect pumps again when out of slots
+        if (!pending.isEmpty() && inFlight < maxInFlight && pumpTimerId == -1L)
+        {
+            var delay = Math.max(1, (long) Math.ceil((1 - tokens) / ratePerMillisecond));
+
+            pumpTimerId = vertx.setTimer(delay, id ->
+            {
+                pumpTimerId = -1L;
+
+                pump();
+            });
+        }
+    }
+
+    private void start(Attempt attempt)
+    {
+        inFlight++;
+
+        client.connect(attempt.port(), attempt.ip(), asyncResult ->
+        {
+            inFlight--;
+
+            if (asyncResult.succeeded())
+            {
+                asyncResult.result().close();
+
+                attempt.promise().complete(null);
+            }
+            else
+            {
+                var errorMessage = asyncResult.cause() != null && asyncResult.cause().getMessage() != null
+                        ? asyncResult.cause().getMessage()
+                        : "Unknown error";
+
+                attempt.promise().complete(errorMessage.contains("Connection refused")
+                        ? "Port " + attempt.port() + " is closed on " + attempt.ip()
+                        : errorMessage);
+            }
+
+            pump();
+        });
+    }
+}
@@ -0,0 +1,138 @@
+package org.nms.discovery;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import static org.nms.App.LOGGER;
+import static org.nms.App.VERTX;
+import org.nms.constants.Config;
+import org.nms.constants.Fields;
+import org.nms.utils.ProcessUtils;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Reachability check of discovery from inside JVM, in place of fping.
+ * Ips are probed on one executor shared by all discoveries, at most maxConcurrentProbes at once on threads of PROCESS_THREAD_MODE,
+ * rest wait in its queue. Strategies are tried in order until one finds host up, each gets timeoutMillis.
+ */
+public class ReachabilityProber
+{
+    private final List<ReachabilityStrategy> strategies;
+
+    private final ExecutorService probes;
+
+    private final int timeoutMillis;
+
+    private final String strategyNames;
+
+    public ReachabilityProber(List<ReachabilityStrategy> strategies, int maxConcurrentProbes, int timeoutMillis)
+    {
+        this.strategies = strategies;
+
+        this.probes = ProcessUtils.newBoundedExecutor("reachability-probe-", maxConcurrentProbes);
+
+        this.timeoutMillis = timeoutMillis;
+
+        this.strategyNames = String.join(", ", strategies.stream().map(ReachabilityStrategy::name).toList());
+    }
+
+    /**
+     * Prober with strategies named in REACHABILITY_STRATEGIES
+     */
+    public static ReachabilityProber fromConfig()
+    {
+        var strategies = new ArrayList<ReachabilityStrategy>();
+
+        for (var name : Config.REACHABILITY_STRATEGIES)
+        {
+            switch (name)
+            {
+                case "TCP" -> strategies.add(new ReachabilityStrategy.TcpConnect(Config.REACHABILITY_TCP_PORTS));
+
+                case "ICMP" -> strategies.add(new ReachabilityStrategy.InetReachable());
+
+                default -> LOGGER.warn("⚠ Unknown reachability strategy " + name + " is ignored");
+            }
+        }
+
+        return new ReachabilityProber(strategies, Config.REACHABILITY_MAX_CONCURRENT_PROBES, Config.REACHABILITY_PROBE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Probes ips, hands every result to consumer on caller's event loop as soon as it is known, in same format as ping results.
+     * Completes after every ip got its result, never fails.
+     */
+    public Future<Void> probe(JsonArray ips, Consumer<JsonObject> onResult)
+    {
+        if (ips == null || ips.isEmpty())
+        {
+            return Future.succeededFuture();
+        }
+
+        var context = VERTX.getOrCreateContext();
+
+        var promise = Promise.<Void>promise();
+
+        var remaining = new AtomicInteger(ips.size());
+
+        for (var i = 0; i < ips.size(); i++)
+        {
+            var ip = ips.getString(i);
+
+            probes.execute(() ->
+            {
+                var result = probe(ip);
+
+                // Results are queued before completion on same event loop, so all of them are handed over first
+                context.runOnContext(v -> onResult.accept(result));
+
+                if (remaining.decrementAndGet() == 0)
+                {
+                    context.runOnContext(v -> promise.complete());
+                }
+            });
+        }
+
+        return promise.future();
+    }
+
+    public void close()
+    {
+        probes.shutdownNow();
+    }
+
+    private JsonObject probe(String ip)
+    {
+        var result = new JsonObject().put(Fields.Discovery.IP, ip);
+
+        try
+        {
+            var address = InetAddress.getByName(ip);
+
+            for (var strategy : strategies)
+            {
+                if (strategy.isReachable(address, timeoutMillis))
+                {
+                    return result.put(Fields.Discovery.SUCCESS, true)
+                            .put(Fields.DiscoveryResult.MESSAGE, "Ping check success ( " + strategy.name() + " )");
+                }
+            }
+
+            return result.put(Fields.Discovery.SUCCESS, false)
+                    .put(Fields.DiscoveryResult.MESSAGE, "Ping check failed: no answer to " + strategyNames);
+        }
+        catch (Exception exception)
+        {
+            return result.put(Fields.Discovery.SUCCESS, false)
+                    .put(Fields.DiscoveryResult.MESSAGE, "Error during ping check: " + exception.getMessage());
+        }
+    }
+}
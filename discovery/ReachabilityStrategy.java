@@ -0,0 +1,111 @@
+package org.nms.discovery;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+
+/**
+ * One way of telling whether a host is up, used by ReachabilityProber. Called on a prober thread, may block up to timeout.
+ */
+public interface ReachabilityStrategy
+{
+    String name();
+
+    boolean isReachable(InetAddress address, int timeoutMillis) throws InterruptedException;
+
+    /**
+     * Connects to ports one after other, host is up if any port accepts or actively refuses, only silence means down.
+     * Ports share timeout, each gets its part of time still left. Works without privileges, unlike ICMP.
+     */
+    class TcpConnect implements ReachabilityStrategy
+    {
+        private final List<Integer> ports;
+
+        public TcpConnect(List<Integer> ports)
+        {
+            this.ports = ports;
+        }
+
+        @Override
+        public String name()
+        {
+            return "TCP";
+        }
+
+        @Override
+        public boolean isReachable(InetAddress address, int timeoutMillis) throws InterruptedException
+        {
+            var deadline = System.currentTimeMillis() + timeoutMillis;
+
+            for (var i = 0; i < ports.size(); i++)
+            {
+                if (Thread.interrupted())
+                {
+                    throw new InterruptedException();
+                }
+
+                var remainingMillis = deadline - System.currentTimeMillis();
+
+                if (remainingMillis <= 0)
+                {
+                    return false;
+                }
+
+                // A silent port only uses its share, a port failing fast ( unreachable ) leaves more time to ports after it
+                if (connect(address, ports.get(i), (int) Math.max(1, remainingMillis / (ports.size() - i))))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        private boolean connect(InetAddress address, int port, int timeoutMillis)
+        {
+            try (var socket = new Socket())
+            {
+                socket.connect(new InetSocketAddress(address, port), timeoutMillis);
+
+                return true;
+            }
+            catch (ConnectException exception)
+            {
+                // Refused means a host answered with reset, anything else ( unreachable, no route ) is a failure
+                return exception.getMessage() != null && exception.getMessage().contains("refused");
+            }
+            catch (IOException exception)
+            {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * InetAddress.isReachable, ICMP echo when JVM may send it, otherwise a TCP connect to echo port
+     */
+    class InetReachable implements ReachabilityStrategy
+    {
+        @Override
+        public String name()
+        {
+            return "ICMP";
+        }
+
+        @Override
+        public boolean isReachable(InetAddress address, int timeoutMillis)
+        {
+            try
+            {
+                return address.isReachable(timeoutMillis);
+            }
+            catch (IOException exception)
+            {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.nms.plugin;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+/**
+ * Bulkhead for one kind of work ( plugin requests, fping processes ), runs at most maxConcurrent tasks and queues at most maxQueued more,
+ * anything beyond is rejected right away instead of waiting behind other work.
+ * A task which waited longer than queueTimeoutMillis is failed instead of run, its sender has given up on it by then.
+ * Keeps queue wait statistics. Confined to verticle owning it, not thread safe.
+ */
+public class ExecutionLane
+{
+    private final String name;
+
+    private final int maxConcurrent;
+
+    private final int maxQueued;
+
+    private final long queueTimeoutMillis;
+
+    private final ArrayDeque<QueuedTask<?>> queue = new ArrayDeque<>();
+
+    private int running = 0;
+
+    private long completedTasks = 0L;
+
+    private long rejectedTasks = 0L;
+
+    private long expiredTasks = 0L;
+
+    private long totalQueueWaitMillis = 0L;
+
+    private long maxQueueWaitMillis = 0L;
+
+    public ExecutionLane(String name, int maxConcurrent, int maxQueued)
+    {
+        this(name, maxConcurrent, maxQueued, Long.MAX_VALUE);
+    }
+
+    public ExecutionLane(String name, int maxConcurrent, int maxQueued, long queueTimeoutMillis)
+    {
+        this.name = name;
+
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+
+        this.maxQueued = Math.max(0, maxQueued);
+
+        this.queueTimeoutMillis = queueTimeoutMillis;
+    }
+
+    public <T> Future<T> submit(Supplier<Future<T>> task)
+    {
+        if (running >= maxConcurrent && queue.size() >= maxQueued)
+        {
+            rejectedTasks++;
+
+            return Future.failedFuture(name + " lane is full, " + running + " running and " + queue.size() + " queued");
+        }
+
+        var queuedTask = new QueuedTask<>(task);
+
+        queue.add(queuedTask);
+
+        drain();
+
+        return queuedTask.promise.future();
+    }
+
+    public JsonObject stats()
+    {
+        return new JsonObject()
+                .put("lane", name)
+                .put("running", running)
+                .put("queued", queue.size())
+                .put("completed", completedTasks)
+                .put("rejected", rejectedTasks)
+                .put("expired", expiredTasks)
+                .put("avg_queue_wait_ms", completedTasks == 0 ? 0 : totalQueueWaitMillis / completedTasks)
+                .put("max_queue_wait_ms", maxQueueWaitMillis);
+    }
+
+    private void drain()
+    {
+        while (running < maxConcurrent && !queue.isEmpty())
+        {
+            run(queue.poll());
+        }
+    }
+
+    private <T> void run(QueuedTask<T> queuedTask)
+    {
+        var queueWaitMillis = System.currentTimeMillis() - queuedTask.queuedAt;
+
+        if (queueWaitMillis > queueTimeoutMillis)
+        {
+            expiredTasks++;
+
+            queuedTask.promise.fail(name + " lane task waited " + queueWaitMillis + " ms in queue, longer than " + queueTimeoutMillis + " ms");
+
+            return;
+        }
+
+        running++;
+
+        totalQueueWaitMillis += queueWaitMillis;
+
+        maxQueueWaitMillis = Math.max(maxQueueWaitMillis, queueWaitMillis);
+
+        Future<T> execution;
+
+        try
+        {
+            execution = queuedTask.task.get();
+        }
+        catch (Exception exception)
+        {
+            execution = Future.failedFuture(exception);
+        }
+
+        execution.onComplete(result ->
+        {
+            running--;
+
+            completedTasks++;
+
+            queuedTask.promise.handle(result);
+
+            drain();
+        });
+    }
+
+    private static class QueuedTask<T>
+    {
+        private final Supplier<Future<T>> task;
+
+        private final Promise<T> promise = Promise.promise();
+
+        private final long queuedAt = System.currentTimeMillis();
+
+        private QueuedTask(Supplier<Future<T>> task)
+        {
+            this.task = task;
+        }
+    }
+}
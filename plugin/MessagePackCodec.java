@@ -0,0 +1,389 @@
+package org.nms.plugin;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal MessagePack codec for plugin frames, maps to JsonObject / JsonArray the same way text Json does.
+ * Binary values decode to byte[], which JsonObject exposes as base64 when encoded to text. Extension types are not supported.
+ */
+public class MessagePackCodec
+{
+    private MessagePackCodec()
+    {
+    }
+
+    public static byte[] encode(JsonObject object)
+    {
+        var buffer = Buffer.buffer(256);
+
+        writeValue(buffer, object);
+
+        return buffer.getBytes();
+    }
+
+    public static JsonObject decode(byte[] bytes)
+    {
+        try
+        {
+            var value = readValue(ByteBuffer.wrap(bytes));
+
+            if (!(value instanceof JsonObject object))
+            {
+                throw new IllegalArgumentException("MessagePack document is not a map");
+            }
+
+            return object;
+        }
+        catch (BufferUnderflowException exception)
+        {
+            throw new IllegalArgumentException("Truncated MessagePack document");
+        }
+    }
+
+    // A MessagePack document holding a map starts with a map header, a text Json one with '{'
+    public static boolean isMessagePack(byte[] bytes)
+    {
+        if (bytes.length == 0)
+        {
+            return false;
+        }
+
+        var header = bytes[0] & 0xff;
+
+        return (header >= 0x80 && header <= 0x8f) || header == 0xde || header == 0xdf;
+    }
+
+    private static void writeValue(Buffer buffer, Object value)
+    {
+        if (value == null)
+        {
+            buffer.appendByte((byte) 0xc0);
+        }
+        else if (value instanceof Boolean bool)
+        {
+            buffer.appendByte((byte) (bool ? 0xc3 : 0xc2));
+        }
+        else if (value instanceof String string)
+        {
+            writeString(buffer, string);
+        }
+        else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+        {
+            writeInteger(buffer, ((Number) value).longValue());
+        }
+        else if (value instanceof Double || value instanceof Float)
+        {
+            buffer.appendByte((byte) 0xcb).appendDouble(((Number) value).doubleValue());
+        }
+        else if (value instanceof BigInteger || value instanceof BigDecimal)
+        {
+            // No arbitrary precision type in MessagePack, keep exact value as text like Json would print it
+            writeString(buffer, value.toString());
+        }
+        else if (value instanceof JsonObject object)
+        {
+            writeMap(buffer, object.getMap());
+        }
+        else if (value instanceof Map<?, ?> map)
+        {
+            writeMap(buffer, map);
+        }
+        else if (value instanceof JsonArray array)
+        {
+            writeArray(buffer, array.getList());
+        }
+        else if (value instanceof List<?> list)
+        {
+            writeArray(buffer, list);
+        }
+        else if (value instanceof byte[] bytes)
+        {
+            writeBinary(buffer, bytes);
+        }
+        else if (value instanceof Buffer bytes)
+        {
+            writeBinary(buffer, bytes.getBytes());
+        }
+        else if (value instanceof Enum<?> constant)
+        {
+            writeString(buffer, constant.name());
+        }
+        else
+        {
+            writeString(buffer, value.toString());
+        }
+    }
+
+    private static void writeInteger(Buffer buffer, long value)
+    {
+        if (value >= 0 && value <= 0x7f)
+        {
+            buffer.appendByte((byte) value);
+        }
+        else if (value < 0 && value >= -32)
+        {
+            buffer.appendByte((byte) value);
+        }
+        else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE)
+        {
+            buffer.appendByte((byte) 0xd0).appendByte((byte) value);
+        }
+        else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE)
+        {
+            buffer.appendByte((byte) 0xd1).appendShort((short) value);
+        }
+        else if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)
+        {
+            buffer.appendByte((byte) 0xd2).appendInt((int) value);
+        }
+        else
+        {
+            buffer.appendByte((byte) 0xd3).appendLong(value);
+        }
+    }
+
+    private static void writeString(Buffer buffer, String string)
+    {
+        var bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        if (bytes.length <= 31)
+        {
+            buffer.appendByte((byte) (0xa0 | bytes.length));
+        }
+        else if (bytes.length <= 0xff)
+        {
+            buffer.appendByte((byte) 0xd9).appendUnsignedByte((short) bytes.length);
+        }
+        else if (bytes.length <= 0xffff)
+        {
+            buffer.appendByte((byte) 0xda).appendUnsignedShort(bytes.length);
+        }
+        else
+        {
+            buffer.appendByte((byte) 0xdb).appendInt(bytes.length);
+        }
+
+        buffer.appendBytes(bytes);
+    }
+
+    private static void writeBinary(Buffer buffer, byte[] bytes)
+    {
+        if (bytes.length <= 0xff)
+        {
+            buffer.appendByte((byte) 0xc4).appendUnsignedByte((short) bytes.length);
+        }
+        else if (bytes.length <= 0xffff)
+        {
+            buffer.appendByte((byte) 0xc5).appendUnsignedShort(bytes.length);
+        }
+        else
+        {
+            buffer.appendByte((byte) 0xc6).appendInt(bytes.length);
+        }
+
+        buffer.appendBytes(bytes);
+    }
+
+    private static void writeMap(Buffer buffer, Map<?, ?> map)
+    {
+        var size = map.size();
+
+        if (size <= 15)
+        {
+            buffer.appendByte((byte) (0x80 | size));
+        }
+        else if (size <= 0xffff)
+        {
+            buffer.appendByte((byte) 0xde).appendUnsignedShort(size);
+        }
+        else
+        {
+            buffer.appendByte((byte) 0xdf).appendInt(size);
+        }
+
+        for (var entry : map.entrySet())
+        {
+            writeString(buffer, String.valueOf(entry.getKey()));
+
+            writeValue(buffer, entry.getValue());
+        }
+    }
+
+    private static void writeArray(Buffer buffer, List<?> list)
+    {
+        var size = list.size();
+
+        if (size <= 15)
+        {
+            buffer.appendByte((byte) (0x90 | size));
+        }
+        else if (size <= 0xffff)
+        {
+            buffer.appendByte((byte) 0xdc).appendUnsignedShort(size);
+        }
+        else
+        {
+            buffer.appendByte((byte) 0xdd).appendInt(size);
+        }
+
+        for (var element : list)
+        {
+            writeValue(buffer, element);
+        }
+    }
+
+    private static Object readValue(ByteBuffer buffer)
+    {
+        var header = buffer.get() & 0xff;
+
+        // Positive fixint, fixmap, fixarray, fixstr and negative fixint carry their value or size in the header
+        if (header <= 0x7f)
+        {
+            return header;
+        }
+        else if (header <= 0x8f)
+        {
+            return readMap(buffer, header & 0x0f);
+        }
+        else if (header <= 0x9f)
+        {
+            return readArray(buffer, header & 0x0f);
+        }
+        else if (header <= 0xbf)
+        {
+            return readString(buffer, header & 0x1f);
+        }
+        else if (header >= 0xe0)
+        {
+            return (int) (byte) header;
+        }
+
+        return switch (header)
+        {
+            case 0xc0 -> null;
+
+            case 0xc2 -> false;
+
+            case 0xc3 -> true;
+
+            case 0xc4 -> readBytes(buffer, buffer.get() & 0xff);
+
+            case 0xc5 -> readBytes(buffer, buffer.getShort() & 0xffff);
+
+            case 0xc6 -> readBytes(buffer, readLength(buffer));
+
+            case 0xca -> (double) buffer.getFloat();
+
+            case 0xcb -> buffer.getDouble();
+
+            case 0xcc -> buffer.get() & 0xff;
+
+            case 0xcd -> buffer.getShort() & 0xffff;
+
+            case 0xce -> buffer.getInt() & 0xffffffffL;
+
+            case 0xcf -> readUnsignedLong(buffer.getLong());
+
+            case 0xd0 -> (int) buffer.get();
+
+            case 0xd1 -> (int) buffer.getShort();
+
+            case 0xd2 -> buffer.getInt();
+
+            case 0xd3 -> buffer.getLong();
+
+            case 0xd9 -> readString(buffer, buffer.get() & 0xff);
+
+            case 0xda -> readString(buffer, buffer.getShort() & 0xffff);
+
+            case 0xdb -> readString(buffer, readLength(buffer));
+
+            case 0xdc -> readArray(buffer, buffer.getShort() & 0xffff);
+
+            case 0xdd -> readArray(buffer, readLength(buffer));
+
+            case 0xde -> readMap(buffer, buffer.getShort() & 0xffff);
+
+            case 0xdf -> readMap(buffer, readLength(buffer));
+
+            default -> throw new IllegalArgumentException("Unsupported MessagePack type 0x" + Integer.toHexString(header));
+        };
+    }
+
+    private static JsonObject readMap(ByteBuffer buffer, int size)
+    {
+        var object = new JsonObject();
+
+        for (var i = 0; i < size; i++)
+        {
+            var key = readValue(buffer);
+
+            object.put(String.valueOf(key), readValue(buffer));
+        }
+
+        return object;
+    }
+
+    private static JsonArray readArray(ByteBuffer buffer, int size)
+    {
+        var array = new JsonArray();
+
+        for (var i = 0; i < size; i++)
+        {
+            array.add(readValue(buffer));
+        }
+
+        return array;
+    }
+
+    private static String readString(ByteBuffer buffer, int length)
+    {
+        if (length > buffer.remaining())
+        {
+            throw new BufferUnderflowException();
+        }
+
+        var string = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+
+        buffer.position(buffer.position() + length);
+
+        return string;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int length)
+    {
+        var bytes = new byte[length];
+
+        buffer.get(bytes);
+
+        return bytes;
+    }
+
+    // 32 bit lengths are unsigned, anything beyond what an array can hold is rejected
+    private static int readLength(ByteBuffer buffer)
+    {
+        var length = buffer.getInt();
+
+        if (length < 0 || length > buffer.remaining())
+        {
+            throw new IllegalArgumentException("Invalid MessagePack length " + Integer.toUnsignedString(length));
+        }
+
+        return length;
+    }
+
+    private static Object readUnsignedLong(long value)
+    {
+        return value >= 0 ? value : new BigInteger(Long.toUnsignedString(value));
+    }
+}
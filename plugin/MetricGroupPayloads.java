@@ -0,0 +1,164 @@
+package org.nms.plugin;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Realistic looking Windows metric group data for plugin simulator.
+ * Hardware info is derived from ip so it stays same across polls, usage values change every poll.
+ */
+class MetricGroupPayloads
+{
+    private static final String[] CPU_MODELS = {
+            "Intel(R) Xeon(R) CPU E5-2680 v4 @ 2.40GHz",
+            "Intel(R) Xeon(R) Gold 6248R CPU @ 3.00GHz",
+            "AMD EPYC 7502P 32-Core Processor"
+    };
+
+    private static final String[] OPERATING_SYSTEMS = {
+            "Microsoft Windows Server 2016 Datacenter",
+            "Microsoft Windows Server 2019 Datacenter",
+            "Microsoft Windows Server 2022 Standard"
+    };
+
+    private static final String[] PROCESS_NAMES = {
+            "System", "svchost.exe", "lsass.exe", "services.exe", "explorer.exe", "sqlservr.exe", "w3wp.exe", "MsMpEng.exe", "winlogon.exe", "csrss.exe"
+    };
+
+    private MetricGroupPayloads()
+    {
+    }
+
+    static JsonObject generate(String name, String ip)
+    {
+        var random = ThreadLocalRandom.current();
+
+        // Same seed for same host, keeps static data stable
+        var host = new Random(ip.hashCode());
+
+        var cores = 4 << host.nextInt(4);
+
+        var totalMemory = (8L << host.nextInt(5)) * 1024 * 1024 * 1024;
+
+        return switch (name)
+        {
+            case "CPUINFO" -> new JsonObject()
+                    .put("model", CPU_MODELS[host.nextInt(CPU_MODELS.length)])
+                    .put("cores", cores)
+                    .put("logical_processors", cores * 2)
+                    .put("max_clock_mhz", 2400 + host.nextInt(8) * 100);
+
+            case "SYSTEMINFO" -> new JsonObject()
+                    .put("hostname", "SIM-" + ip.replace('.', '-').replace(':', '-'))
+                    .put("os", OPERATING_SYSTEMS[host.nextInt(OPERATING_SYSTEMS.length)])
+                    .put("manufacturer", "VMware, Inc.")
+                    .put("model", "VMware7,1")
+                    .put("total_memory_bytes", totalMemory);
+
+            case "CPUUSAGE" -> cpuUsage(random, cores);
+
+            case "MEMORY" -> memory(random, totalMemory);
+
+            case "DISK" -> disks(random, host);
+
+            case "UPTIME" -> new JsonObject().put("uptime_seconds", 3600L + random.nextLong(90L * 24 * 3600));
+
+            case "PROCESS" -> processes(random);
+
+            case "NETWORK" -> network(random);
+
+            default -> new JsonObject().put("value", random.nextDouble(100));
+        };
+    }
+
+    private static JsonObject cpuUsage(RandomGenerator random, int cores)
+    {
+        var perCore = new JsonArray();
+
+        var total = 0.0;
+
+        for (var i = 0; i < cores; i++)
+        {
+            var usage = Math.round(random.nextDouble(100) * 10) / 10.0;
+
+            perCore.add(usage);
+
+            total += usage;
+        }
+
+        return new JsonObject()
+                .put("total_percent", Math.round(total / cores * 10) / 10.0)
+                .put("per_core_percent", perCore);
+    }
+
+    private static JsonObject memory(RandomGenerator random, long totalMemory)
+    {
+        var used = (long) (totalMemory * random.nextDouble(0.2, 0.95));
+
+        return new JsonObject()
+                .put("total_bytes", totalMemory)
+                .put("used_bytes", used)
+                .put("free_bytes", totalMemory - used)
+                .put("used_percent", Math.round(used * 1000.0 / totalMemory) / 10.0);
+    }
+
+    private static JsonObject disks(RandomGenerator random, Random host)
+    {
+        var disks = new JsonArray();
+
+        var count = 1 + host.nextInt(3);
+
+        for (var i = 0; i < count; i++)
+        {
+            var total = (64L << host.nextInt(5)) * 1024 * 1024 * 1024;
+
+            var free = (long) (total * random.nextDouble(0.05, 0.9));
+
+            disks.add(new JsonObject()
+                    .put("drive", (char) ('C' + i) + ":")
+                    .put("total_bytes", total)
+                    .put("free_bytes", free)
+                    .put("used_percent", Math.round((total - free) * 1000.0 / total) / 10.0));
+        }
+
+        return new JsonObject().put("disks", disks);
+    }
+
+    private static JsonObject processes(RandomGenerator random)
+    {
+        var processes = new JsonArray();
+
+        for (var i = 0; i < 20; i++)
+        {
+            processes.add(new JsonObject()
+                    .put("pid", 4 + random.nextInt(20000))
+                    .put("name", PROCESS_NAMES[random.nextInt(PROCESS_NAMES.length)])
+                    .put("cpu_percent", Math.round(random.nextDouble(25) * 10) / 10.0)
+                    .put("memory_bytes", random.nextLong(1024L * 1024 * 1024)));
+        }
+
+        return new JsonObject().put("processes", processes);
+    }
+
+    private static JsonObject network(RandomGenerator random)
+    {
+        var interfaces = new JsonArray();
+
+        for (var i = 0; i < 2; i++)
+        {
+            interfaces.add(new JsonObject()
+                    .put("interface", "Ethernet" + i)
+                    .put("bytes_sent", random.nextLong(1L << 40))
+                    .put("bytes_received", random.nextLong(1L << 40))
+                    .put("packets_sent", random.nextLong(1L << 32))
+                    .put("packets_received", random.nextLong(1L << 32))
+                    .put("errors", random.nextInt(5)));
+        }
+
+        return new JsonObject().put("interfaces", interfaces);
+    }
+}
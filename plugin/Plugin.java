@@ -2,95 +2,368 @@ package org.nms.plugin;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 
 import static org.nms.App.LOGGER;
 import org.nms.constants.Config;
 import org.nms.constants.Fields;
+import org.nms.utils.ProcessUtils;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Plugin extends AbstractVerticle
 {
+    private PluginWorkerPool workerPool;
+
+    private WinRmCollector winRmCollector;
+
+    // Separate lanes so a long discovery can never hold back polling
+    private final ExecutionLane pollingLane = new ExecutionLane("polling", Config.POLLING_LANE_CONCURRENCY, Config.POLLING_LANE_QUEUE_SIZE,
+            Config.POLLING_LANE_QUEUE_TIMEOUT * 1000L);
+
+    private final ExecutionLane discoveryLane = new ExecutionLane("discovery", Config.DISCOVERY_LANE_CONCURRENCY, Config.DISCOVERY_LANE_QUEUE_SIZE,
+            Config.DISCOVERY_LANE_QUEUE_TIMEOUT * 1000L);
+
+    private long laneStatsTimerId = -1L;
+
     @Override
     public void start()
     {
+        if (Config.PLUGIN_WORKER_POOL_ENABLED)
+        {
+            workerPool = new PluginWorkerPool(vertx, Config.PLUGIN_WORKER_POOL_SIZE);
+
+            workerPool.start();
+        }
+
+        if (Config.IN_PROCESS_COLLECTOR_ENABLED)
+        {
+            winRmCollector = new WinRmCollector(vertx);
+
+            // Pooled sessions must not keep authenticating with an edited or deleted credential
+            vertx.eventBus().<Integer>localConsumer(Fields.EventBus.CREDENTIAL_CHANGED_ADDRESS, message -> winRmCollector.closeSessions(message.body()));
+        }
+
         vertx.eventBus().<JsonObject>localConsumer(Fields.EventBus.PLUGIN_SPAWN_ADDRESS, message ->
         {
             var request = message.body();
 
-            spawnPlugin(request)
-                    .onComplete(pluginResponse -> message.reply(pluginResponse.result()));
+            var lane = "polling".equals(request.getString("type", "")) ? pollingLane : discoveryLane;
+
+            var pluginResponse = lane.submit(() -> executePlugin(request));
+
+            pluginResponse.onComplete(response ->
+            {
+                if (response.succeeded())
+                {
+                    message.reply(response.result());
+                }
+                else
+                {
+                    LOGGER.warn("⚠ Plugin request rejected: " + response.cause().getMessage());
+
+                    message.fail(503, response.cause().getMessage());
+                }
+            });
         });
 
-        LOGGER.info("✅ Plugin Verticle Deployed");
+        laneStatsTimerId = vertx.setPeriodic(Config.EXECUTION_LANE_STATS_INTERVAL * 1000L, id ->
+                LOGGER.info("📊 Plugin lanes: " + pollingLane.stats().encode() + " " + discoveryLane.stats().encode()));
+
+        LOGGER.info("✅ Plugin Verticle Deployed" + (workerPool != null ? " with " + Config.PLUGIN_WORKER_POOL_SIZE + " plugin workers" : ""));
     }
 
 
     @Override
     public void stop()
     {
+        vertx.cancelTimer(laneStatsTimerId);
+
+        if (workerPool != null)
+        {
+            workerPool.close();
+        }
+
+        if (winRmCollector != null)
+        {
+            winRmCollector.close();
+        }
+
         LOGGER.info("⚠ Plugin Verticle Stopped");
     }
 
+    private Future<JsonObject> executePlugin(JsonObject request)
+    {
+        if (winRmCollector != null && "polling".equals(request.getString("type", "")))
+        {
+            return executeInProcess(request);
+        }
+
+        return executeOnPlugin(request);
+    }
+
     /**
-     * Spawns plugin, Sends request and returns Json Response
+     * Runs request on worker pool or a spawned plugin, with deadlines counted from now so time spent queued is not lost.
+     * Items without result when time is up come back with explicit timeout status.
      */
-    private Future<JsonObject> spawnPlugin(JsonObject request)
+    private Future<JsonObject> executeOnPlugin(JsonObject request)
     {
-        return vertx.executeBlocking(() ->
+        // Calculate timeout based on request type
+        var timeout = calculateTimeout(request);
+
+        var timedRequest = request.copy()
+
+                .put(Fields.PluginTimeout.ITEM_TIMEOUT, itemTimeoutOf(request))
+
+                .put(Fields.PluginTimeout.DEADLINE, System.currentTimeMillis() + (timeout - Config.PLUGIN_DEADLINE_MARGIN) * 1000L);
+
+        if (workerPool == null)
         {
-            try
+            return spawnPlugin(timedRequest, timeout);
+        }
+
+        // Worker answers empty only when it timed out or died, no item has a result then
+        return workerPool.send(timedRequest.put(Fields.PluginWorker.ENCODING, encodingOf(request)), timeout)
+                .map(response -> response.isEmpty() ? timeoutResponse(request, Set.of(), timeout) : response);
+    }
+
+    /**
+     * Polls devices whose credential protocol the in process collector speaks without plugin, their results are forwarded
+     * like streamed plugin results. Remaining devices go to plugin, its response is returned once both are done.
+     */
+    private Future<JsonObject> executeInProcess(JsonObject request)
+    {
+        var devices = request.getJsonArray(Fields.PluginPollingRequest.DEVICES, new JsonArray());
+
+        var pluginDevices = new JsonArray();
+
+        var collected = new ArrayList<Future<JsonObject>>();
+
+        var deadline = System.currentTimeMillis() + (calculateTimeout(request) - Config.PLUGIN_DEADLINE_MARGIN) * 1000L;
+
+        for (var i = 0; i < devices.size(); i++)
+        {
+            var device = devices.getJsonObject(i);
+
+            if (winRmCollector.supports(device))
+            {
+                collected.add(winRmCollector.poll(device, deadline).onSuccess(result -> forwardResult(request, result)));
+            }
+            else
             {
-                // Calculate timeout based on request type
-                var timeout = calculateTimeout(request);
+                pluginDevices.add(device);
+            }
+        }
+
+        var pluginResponse = pluginDevices.isEmpty()
+                ? Future.succeededFuture(new JsonObject().put(Fields.PluginStream.STREAMED, 0))
+                : executeOnPlugin(request.copy().put(Fields.PluginPollingRequest.DEVICES, pluginDevices));
+
+        return Future.join(collected).transform(done -> pluginResponse);
+    }
+
+    /**
+     * Spawns plugin, Sends request and returns Json Response.
+     * In streaming mode every output line is one result, forwarded to its consumer as soon as it is read,
+     * response then only carries number of streamed results. Plugins answering with one Json document still work.
+     */
+    private Future<JsonObject> spawnPlugin(JsonObject request, int timeout)
+    {
+        var encodedRequest = Config.PLUGIN_STREAMING_ENABLED
+                ? request.copy().put(Fields.PluginStream.STREAM, true).encode()
+                : request.encode();
+
+        // Prepare go command, large requests don't fit in a single argument
+        var goCommand = Config.PLUGIN_REQUEST_OVER_STDIN
+                ? new String[] {Config.PLUGIN_PATH, Config.PLUGIN_STDIN_ARGUMENT}
+                : new String[] {Config.PLUGIN_PATH, encodedRequest};
 
-                var encodedRequest = request.encode();
+        var input = Config.PLUGIN_REQUEST_OVER_STDIN
+                ? (encodedRequest + "\n").getBytes(StandardCharsets.UTF_8)
+                : null;
 
-                // Prepare go command
-                var goCommand = new String[] {Config.PLUGIN_PATH, encodedRequest};
+        LOGGER.debug("Spawning plugin with request: " + encodedRequest);
 
-                LOGGER.debug("Spawning plugin with request: " + encodedRequest);
+        // Keys of items which already have a result, filled on reader thread
+        var completedItems = ConcurrentHashMap.<String>newKeySet();
+
+        // Run command, output is read while plugin runs so it never blocks on a full pipe
+        return ProcessUtils.execute(new ProcessBuilder(goCommand), input, timeout, line ->
+                {
+                    var result = Config.PLUGIN_STREAMING_ENABLED ? parseLine(line) : null;
 
-                var builder = new ProcessBuilder(goCommand);
+                    if (result == null || isEnvelope(result))
+                    {
+                        return false;
+                    }
 
-                // Run command
-                var process = builder.start();
+                    markCompleted(completedItems, result);
 
-                // Wait for response with timeout
-                var doneExecuting = process.waitFor(timeout, TimeUnit.SECONDS);
+                    forwardResult(request, result);
 
-                // If Timeout
-                if (!doneExecuting)
+                    return true;
+                })
+                .map(result ->
                 {
-                    LOGGER.warn("⚠ Plugin is not responding within " + timeout + " seconds, process is being terminated !");
+                    // If Timeout, results streamed so far are already forwarded, rest is reported as timed out
+                    if (result.timedOut())
+                    {
+                        LOGGER.warn("⚠ Plugin is not responding within " + timeout + " seconds, process is terminated after " + completedItems.size() + " completed items !");
 
-                    process.destroyForcibly();
+                        return timeoutResponse(request, completedItems, timeout);
+                    }
+
+                    LOGGER.debug("Plugin response: " + result.output() + ", completed items: " + completedItems.size());
+
+                    return result.output().isBlank()
+                            ? new JsonObject().put(Fields.PluginStream.STREAMED, completedItems.size())
+                            : new JsonObject(result.output());
+                })
+                .otherwise(failure ->
+                {
+                    LOGGER.error("❌ Error spawning plugin: " + failure.getMessage());
 
                     // Send empty response
                     return new JsonObject();
-                }
-
-                // Else Read output
-                var reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                });
+    }
 
-                var output = reader.lines().collect(Collectors.joining());
+    private int itemTimeoutOf(JsonObject request)
+    {
+        return "polling".equals(request.getString("type", ""))
+                ? Config.POLLING_TIMEOUT_PER_METRIC_GROUP
+                : Config.DISCOVERY_TIMEOUT_PER_IP;
+    }
 
-                LOGGER.debug("Plugin response: " + output);
+    // Polling items are metric groups of a device, discovery items are ips
+    private void markCompleted(Set<String> completedItems, JsonObject result)
+    {
+        var metricGroups = result.getJsonArray(Fields.PluginPollingResponse.METRIC_GROUPS);
 
-                return new JsonObject(output);
+        if (metricGroups != null)
+        {
+            for (var i = 0; i < metricGroups.size(); i++)
+            {
+                completedItems.add(result.getValue(Fields.PluginPollingResponse.MONITOR_ID) + ":" + metricGroups.getJsonObject(i).getString(Fields.PluginPollingResponse.NAME));
             }
-            catch (Exception exception)
+        }
+        else if (result.containsKey(Fields.PluginPollingResponse.NAME))
+        {
+            completedItems.add(result.getValue(Fields.PluginPollingResponse.MONITOR_ID) + ":" + result.getString(Fields.PluginPollingResponse.NAME));
+        }
+        else
+        {
+            completedItems.add(String.valueOf(result.getValue(Fields.PluginDiscoveryResponse.IP)));
+        }
+    }
+
+    // Response with a failed, timed out entry for every item of request without result, in the plain single document format
+    private JsonObject timeoutResponse(JsonObject request, Set<String> completedItems, int timeout)
+    {
+        var message = "No result within " + timeout + " seconds";
+
+        var timedOutItems = new JsonArray();
+
+        if ("polling".equals(request.getString("type", "")))
+        {
+            var devices = request.getJsonArray(Fields.PluginPollingRequest.DEVICES, new JsonArray());
+
+            for (var i = 0; i < devices.size(); i++)
             {
-                LOGGER.error("❌ Error spawning plugin: " + exception.getMessage());
+                var device = devices.getJsonObject(i);
+
+                var metricGroups = device.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray());
+
+                for (var k = 0; k < metricGroups.size(); k++)
+                {
+                    var monitorId = device.getValue(Fields.PluginPollingRequest.MONITOR_ID);
 
-                // Send empty response
-                return new JsonObject();
+                    if (!completedItems.contains(monitorId + ":" + metricGroups.getString(k)))
+                    {
+                        timedOutItems.add(new JsonObject()
+                                .put(Fields.PluginPollingResponse.MONITOR_ID, monitorId)
+                                .put(Fields.PluginPollingResponse.NAME, metricGroups.getString(k))
+                                .put(Fields.Discovery.SUCCESS, false)
+                                .put(Fields.PluginTimeout.STATUS, Fields.PluginTimeout.TIMEOUT_STATUS)
+                                .put(Fields.PluginDiscoveryResponse.MESSAGE, message));
+                    }
+                }
             }
-        });
+
+            return new JsonObject().put(Fields.PluginPollingResponse.METRIC_GROUPS, timedOutItems);
+        }
+
+        var ips = request.getJsonArray(Fields.PluginDiscoveryRequest.IPS, new JsonArray());
+
+        for (var i = 0; i < ips.size(); i++)
+        {
+            var ip = String.valueOf(ips.getValue(i));
+
+            if (!completedItems.contains(ip))
+            {
+                timedOutItems.add(new JsonObject()
+                        .put(Fields.PluginDiscoveryResponse.IP, ip)
+                        .put(Fields.Discovery.SUCCESS, false)
+                        .put(Fields.PluginTimeout.STATUS, Fields.PluginTimeout.TIMEOUT_STATUS)
+                        .put(Fields.PluginDiscoveryResponse.MESSAGE, "Credential check timed out: " + message));
+            }
+        }
+
+        return new JsonObject().put(Fields.PluginDiscoveryResponse.RESULT_JSON, timedOutItems);
+    }
+
+    // One complete Json object per line, anything else is part of a single document response
+    private JsonObject parseLine(String line)
+    {
+        if (line.isBlank() || line.charAt(0) != '{')
+        {
+            return null;
+        }
+
+        try
+        {
+            return new JsonObject(line);
+        }
+        catch (Exception exception)
+        {
+            return null;
+        }
+    }
+
+    // Whole response on one line, as sent by plugins without streaming support
+    private boolean isEnvelope(JsonObject result)
+    {
+        return result.containsKey(Fields.PluginDiscoveryResponse.RESULT_JSON)
+                || result.containsKey(Fields.PluginPollingResponse.DEVICES)
+                || (result.containsKey(Fields.PluginPollingResponse.METRIC_GROUPS) && !result.containsKey(Fields.PluginPollingResponse.MONITOR_ID));
+    }
+
+    private void forwardResult(JsonObject request, JsonObject result)
+    {
+        var type = request.getString("type", "");
+
+        if ("polling".equals(type))
+        {
+            vertx.eventBus().send(Fields.EventBus.PLUGIN_POLLING_RESULT_ADDRESS, result);
+        }
+        else if ("discovery".equals(type))
+        {
+            // Tag result with discovery it belongs to
+            vertx.eventBus().send(Fields.EventBus.PLUGIN_DISCOVERY_RESULT_ADDRESS,
+                    result.put(Fields.PluginDiscoveryResponse.ID, request.getInteger(Fields.PluginDiscoveryRequest.ID)));
+        }
+    }
+
+    // Frame encoding for worker requests, polling is frequent enough to be worth a binary encoding
+    private String encodingOf(JsonObject request)
+    {
+        return "polling".equals(request.getString("type", ""))
+                ? Config.PLUGIN_POLLING_ENCODING
+                : Config.PLUGIN_DISCOVERY_ENCODING;
     }
 
     /**
@@ -112,9 +385,14 @@ public class Plugin extends AbstractVerticle
         // Calculate timeout for polling
         else if ("polling".equals(type))
         {
-            var metricGroups = request.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, null);
+            var devices = request.getJsonArray(Fields.PluginPollingRequest.DEVICES, new JsonArray());
+
+            var metricGroupCount = 0;
 
-            var metricGroupCount = (metricGroups != null) ? metricGroups.size() : 0;
+            for (var i = 0; i < devices.size(); i++)
+            {
+                metricGroupCount += devices.getJsonObject(i).getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray()).size();
+            }
 
             return Config.BASE_TIME + (metricGroupCount * Config.POLLING_TIMEOUT_PER_METRIC_GROUP);
         }
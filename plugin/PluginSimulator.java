@@ -0,0 +1,331 @@
+package org.nms.plugin;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import org.nms.constants.Config;
+import org.nms.constants.Fields;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * Stand in for plugin binary at PLUGIN_PATH, for load and soak testing without real hosts.
+ * Speaks same contract: request as argument, over stdin ( "-" ) or as length prefixed frames ( "--worker" ),
+ * answers with one document or one line per device / ip when request asks for streaming.
+ * Behaviour is tuned with system properties:
+ * simulator.latency.distribution ( fixed, uniform, normal, exponential ), simulator.latency.mean and simulator.latency.spread in ms
+ * per metric group or ip, simulator.failure.rate and simulator.timeout.rate between 0 and 1, simulator.output.size extra bytes per result.
+ * Runs without Vert.x, point PLUGIN_PATH to a script running "java -cp nms.jar org.nms.plugin.PluginSimulator $@".
+ */
+public class PluginSimulator
+{
+    private static final String LATENCY_DISTRIBUTION = System.getProperty("simulator.latency.distribution", "normal");
+
+    private static final double LATENCY_MEAN = Double.parseDouble(System.getProperty("simulator.latency.mean", "50"));
+
+    private static final double LATENCY_SPREAD = Double.parseDouble(System.getProperty("simulator.latency.spread", "20"));
+
+    private static final double FAILURE_RATE = Double.parseDouble(System.getProperty("simulator.failure.rate", "0.02"));
+
+    private static final double TIMEOUT_RATE = Double.parseDouble(System.getProperty("simulator.timeout.rate", "0"));
+
+    private static final int OUTPUT_SIZE = Integer.parseInt(System.getProperty("simulator.output.size", "0"));
+
+    // Devices and ips are served concurrently like real plugin does, metric groups of one device one after other
+    private static final ExecutorService EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final Object OUTPUT_LOCK = new Object();
+
+    // Request id -> work of a worker request not answered yet
+    private static final ConcurrentHashMap<Long, FutureTask<Object>> RUNNING_REQUESTS = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length == 0)
+        {
+            System.err.println("Usage: PluginSimulator <request json> | " + Config.PLUGIN_STDIN_ARGUMENT + " | " + Config.PLUGIN_WORKER_ARGUMENT);
+
+            System.exit(2);
+        }
+
+        if (Config.PLUGIN_WORKER_ARGUMENT.equals(args[0]))
+        {
+            runWorker();
+
+            return;
+        }
+
+        var request = Config.PLUGIN_STDIN_ARGUMENT.equals(args[0])
+                ? new JsonObject(new String(System.in.readAllBytes(), StandardCharsets.UTF_8))
+                : new JsonObject(args[0]);
+
+        var output = new BufferedOutputStream(System.out);
+
+        var response = handle(request, request.getBoolean(Fields.PluginStream.STREAM, false) ? output : null);
+
+        if (response != null)
+        {
+            output.write(response.toBuffer().getBytes());
+
+            output.write('\n');
+        }
+
+        output.flush();
+
+        System.exit(0);
+    }
+
+    // Serves framed requests until stdin closes, every request on its own thread, answers in encoding of request
+    private static void runWorker() throws IOException
+    {
+        var input = new DataInputStream(System.in);
+
+        var output = new DataOutputStream(new BufferedOutputStream(System.out));
+
+        try
+        {
+            while (true)
+            {
+                var payload = new byte[input.readInt()];
+
+                input.readFully(payload);
+
+                var binary = MessagePackCodec.isMessagePack(payload);
+
+                var request = binary ? MessagePackCodec.decode(payload) : new JsonObject(new String(payload, StandardCharsets.UTF_8));
+
+                var requestId = request.getLong(Fields.PluginWorker.REQUEST_ID, -1L);
+
+                // Timed out request, its work is interrupted and never answered
+                if (Fields.PluginWorker.CANCEL.equals(request.getString(Fields.PluginWorker.TYPE)))
+                {
+                    var running = RUNNING_REQUESTS.remove(requestId);
+
+                    if (running != null)
+                    {
+                        running.cancel(true);
+                    }
+
+                    continue;
+                }
+
+                // Registered before it runs, a fast answer must find it
+                var task = new FutureTask<>(() ->
+                {
+                    var response = Fields.PluginWorker.HEALTH.equals(request.getString(Fields.PluginWorker.TYPE))
+                            ? new JsonObject().put(Fields.PluginWorker.TYPE, Fields.PluginWorker.HEALTH)
+                            : handle(request, null);
+
+                    response.put(Fields.PluginWorker.REQUEST_ID, request.getValue(Fields.PluginWorker.REQUEST_ID));
+
+                    var frame = binary ? MessagePackCodec.encode(response) : response.toBuffer().getBytes();
+
+                    synchronized (OUTPUT_LOCK)
+                    {
+                        if (RUNNING_REQUESTS.remove(requestId) == null)
+                        {
+                            return null;
+                        }
+
+                        output.writeInt(frame.length);
+
+                        output.write(frame);
+
+                        output.flush();
+                    }
+
+                    return null;
+                });
+
+                RUNNING_REQUESTS.put(requestId, task);
+
+                EXECUTOR.execute(task);
+            }
+        }
+        catch (EOFException exception)
+        {
+            System.exit(0);
+        }
+    }
+
+    /**
+     * Serves one request, results are written as lines to stream if given and null is returned,
+     * otherwise whole response document is returned
+     */
+    private static JsonObject handle(JsonObject request, OutputStream stream) throws Exception
+    {
+        var polling = Fields.PluginPollingRequest.POLLING.equals(request.getString(Fields.PluginPollingRequest.TYPE));
+
+        var items = polling
+                ? request.getJsonArray(Fields.PluginPollingRequest.DEVICES, new JsonArray())
+                : request.getJsonArray(Fields.PluginDiscoveryRequest.IPS, new JsonArray());
+
+        var itemTimeoutMillis = request.getLong(Fields.PluginTimeout.ITEM_TIMEOUT, (long) Config.POLLING_TIMEOUT_PER_METRIC_GROUP) * 1000L;
+
+        var binaryData = Fields.PluginWorker.MSGPACK.equals(request.getString(Fields.PluginWorker.ENCODING));
+
+        var tasks = new ArrayList<Future<JsonObject>>();
+
+        for (var i = 0; i < items.size(); i++)
+        {
+            var item = items.getValue(i);
+
+            tasks.add(EXECUTOR.submit(() ->
+            {
+                var result = polling
+                        ? pollDevice((JsonObject) item, itemTimeoutMillis, binaryData)
+                        : checkCredentials(String.valueOf(item), request.getJsonArray(Fields.PluginDiscoveryRequest.CREDENTIALS, new JsonArray()), itemTimeoutMillis);
+
+                if (stream != null)
+                {
+                    var line = result.toBuffer().getBytes();
+
+                    synchronized (OUTPUT_LOCK)
+                    {
+                        stream.write(line);
+
+                        stream.write('\n');
+
+                        stream.flush();
+                    }
+                }
+
+                return result;
+            }));
+        }
+
+        var results = new JsonArray();
+
+        for (var task : tasks)
+        {
+            results.add(task.get());
+        }
+
+        if (stream != null)
+        {
+            return null;
+        }
+
+        return polling
+                ? new JsonObject().put(Fields.PluginPollingResponse.DEVICES, results)
+                : new JsonObject().put(Fields.PluginDiscoveryResponse.RESULT_JSON, results);
+    }
+
+    private static JsonObject pollDevice(JsonObject device, long itemTimeoutMillis, boolean binaryData) throws InterruptedException
+    {
+        var ip = device.getString(Fields.PluginPollingRequest.IP, "");
+
+        var names = device.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray());
+
+        var metricGroups = new JsonArray();
+
+        for (var i = 0; i < names.size(); i++)
+        {
+            var name = names.getString(i);
+
+            var result = new JsonObject().put(Fields.PluginPollingResponse.NAME, name);
+
+            var outcome = simulateWork(itemTimeoutMillis);
+
+            if (outcome == null)
+            {
+                var data = MetricGroupPayloads.generate(name, ip);
+
+                if (OUTPUT_SIZE > 0)
+                {
+                    data.put("padding", "x".repeat(OUTPUT_SIZE));
+                }
+
+                result.put(Fields.Discovery.SUCCESS, true)
+                        .put(Fields.PluginPollingResponse.DATA, binaryData ? data : data.encode());
+            }
+            else
+            {
+                result.put(Fields.Discovery.SUCCESS, false)
+                        .put(Fields.PluginDiscoveryResponse.MESSAGE, outcome);
+
+                if (outcome.startsWith("Timed out"))
+                {
+                    result.put(Fields.PluginTimeout.STATUS, Fields.PluginTimeout.TIMEOUT_STATUS);
+                }
+            }
+
+            metricGroups.add(result);
+        }
+
+        return new JsonObject()
+                .put(Fields.PluginPollingResponse.MONITOR_ID, device.getValue(Fields.PluginPollingRequest.MONITOR_ID))
+                .put(Fields.PluginPollingResponse.METRIC_GROUPS, metricGroups);
+    }
+
+    private static JsonObject checkCredentials(String ip, JsonArray credentials, long itemTimeoutMillis) throws InterruptedException
+    {
+        var result = new JsonObject().put(Fields.PluginDiscoveryResponse.IP, ip);
+
+        var outcome = credentials.isEmpty() ? "No credentials to check" : simulateWork(itemTimeoutMillis);
+
+        if (outcome == null)
+        {
+            return result.put(Fields.Discovery.SUCCESS, true)
+                    .put(Fields.PluginDiscoveryResponse.CREDENTIALS, credentials.getJsonObject(0))
+                    .put(Fields.PluginDiscoveryResponse.MESSAGE, "Credential check success");
+        }
+
+        return result.put(Fields.Discovery.SUCCESS, false)
+                .put(Fields.PluginDiscoveryResponse.MESSAGE, outcome);
+    }
+
+    // Sleeps for simulated latency, returns null on success or failure message
+    private static String simulateWork(long itemTimeoutMillis) throws InterruptedException
+    {
+        var random = ThreadLocalRandom.current();
+
+        if (random.nextDouble() < TIMEOUT_RATE)
+        {
+            Thread.sleep(itemTimeoutMillis);
+
+            return "Timed out after " + itemTimeoutMillis + " ms";
+        }
+
+        var latency = (long) Math.max(0, sampleLatency(random));
+
+        if (latency >= itemTimeoutMillis)
+        {
+            Thread.sleep(itemTimeoutMillis);
+
+            return "Timed out after " + itemTimeoutMillis + " ms";
+        }
+
+        Thread.sleep(latency);
+
+        return random.nextDouble() < FAILURE_RATE ? "Simulated failure: access denied" : null;
+    }
+
+    private static double sampleLatency(RandomGenerator random)
+    {
+        return switch (LATENCY_DISTRIBUTION)
+        {
+            case "fixed" -> LATENCY_MEAN;
+
+            case "uniform" -> LATENCY_MEAN - LATENCY_SPREAD + random.nextDouble() * 2 * LATENCY_SPREAD;
+
+            case "exponential" -> random.nextExponential() * LATENCY_MEAN;
+
+            default -> random.nextGaussian(LATENCY_MEAN, LATENCY_SPREAD);
+        };
+    }
+}
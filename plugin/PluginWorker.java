@@ -0,0 +1,263 @@
+package org.nms.plugin;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import static org.nms.App.LOGGER;
+import org.nms.constants.Config;
+import org.nms.constants.Fields;
+import org.nms.utils.ProcessUtils;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One long lived plugin process speaking length prefixed frames over stdin / stdout.
+ * Every frame is a 4 byte big endian length followed by a UTF-8 Json or a MessagePack document, chosen by request's encoding,
+ * plugin answers in encoding of the request. Requests carry a request id which plugin echoes back,
+ * so many requests can be in flight on one process.
+ * Frames are encoded and written by a writer thread, so a worker slow to read never blocks event loop,
+ * requests which time out are cancelled on worker.
+ */
+public class PluginWorker
+{
+    private static final AtomicLong REQUEST_IDS = new AtomicLong();
+
+    private final Vertx vertx;
+
+    private final Context context;
+
+    private final int index;
+
+    private final Process process;
+
+    private final DataOutputStream writer;
+
+    // Frames waiting for writer thread
+    private final LinkedBlockingQueue<JsonObject> outbox = new LinkedBlockingQueue<>();
+
+    private Thread writerThread;
+
+    private final ConcurrentHashMap<Long, Promise<JsonObject>> pendingRequests = new ConcurrentHashMap<>();
+
+    private final Promise<Void> exitPromise = Promise.promise();
+
+    private volatile boolean alive = true;
+
+    private PluginWorker(Vertx vertx, Context context, int index, Process process)
+    {
+        this.vertx = vertx;
+
+        this.context = context;
+
+        this.index = index;
+
+        this.process = process;
+
+        this.writer = new DataOutputStream(process.getOutputStream());
+    }
+
+    public static PluginWorker start(Vertx vertx, Context context, int index) throws IOException
+    {
+        var process = new ProcessBuilder(Config.PLUGIN_PATH, Config.PLUGIN_WORKER_ARGUMENT)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        var worker = new PluginWorker(vertx, context, index, process);
+
+        ProcessUtils.startThread("plugin-worker-reader-" + index, worker::readFrames);
+
+        worker.writerThread = ProcessUtils.startThread("plugin-worker-writer-" + index, worker::writeFrames);
+
+        LOGGER.info("✅ Plugin worker " + index + " started with pid " + process.pid());
+
+        return worker;
+    }
+
+    /**
+     * Sends request to worker, completes with empty Json on timeout or if worker dies, same as a failed spawn
+     */
+    public Future<JsonObject> send(JsonObject request, long timeoutSeconds)
+    {
+        var promise = Promise.<JsonObject>promise();
+
+        if (!alive)
+        {
+            promise.complete(new JsonObject());
+
+            return promise.future();
+        }
+
+        var requestId = REQUEST_IDS.incrementAndGet();
+
+        var frame = request.copy().put(Fields.PluginWorker.REQUEST_ID, requestId);
+
+        pendingRequests.put(requestId, promise);
+
+        var timerId = vertx.setTimer(timeoutSeconds * 1000L, id ->
+        {
+            if (pendingRequests.remove(requestId) != null)
+            {
+                LOGGER.warn("⚠ Plugin worker " + index + " did not answer request " + requestId + " within " + timeoutSeconds + " seconds");
+
+                cancel(frame, requestId);
+
+                promise.tryComplete(new JsonObject());
+            }
+        });
+
+        promise.future().onComplete(response -> vertx.cancelTimer(timerId));
+
+        outbox.add(frame);
+
+        return promise.future();
+    }
+
+    // Health check round trip, fails if worker does not answer in time
+    public Future<Void> ping()
+    {
+        return send(new JsonObject().put(Fields.PluginWorker.TYPE, Fields.PluginWorker.HEALTH), Config.PLUGIN_WORKER_HEALTH_TIMEOUT)
+                .compose(response -> response.isEmpty()
+                        ? Future.failedFuture("Plugin worker " + index + " is not responding")
+                        : Future.succeededFuture());
+    }
+
+    public int pendingCount()
+    {
+        return pendingRequests.size();
+    }
+
+    public boolean isAlive()
+    {
+        return alive;
+    }
+
+    // Completes once worker process is gone for any reason
+    public Future<Void> onExit()
+    {
+        return exitPromise.future();
+    }
+
+    public void destroy()
+    {
+        alive = false;
+
+        if (writerThread != null)
+        {
+            writerThread.interrupt();
+        }
+
+        process.destroyForcibly();
+    }
+
+    // Request not written yet is just dropped, otherwise worker is told to stop it
+    private void cancel(JsonObject frame, long requestId)
+    {
+        if (outbox.remove(frame))
+        {
+            return;
+        }
+
+        outbox.add(new JsonObject()
+                .put(Fields.PluginWorker.TYPE, Fields.PluginWorker.CANCEL)
+                .put(Fields.PluginWorker.REQUEST_ID, requestId));
+    }
+
+    // Runs on dedicated writer thread until worker is destroyed
+    private void writeFrames()
+    {
+        try
+        {
+            while (alive)
+            {
+                writeFrame(outbox.take());
+            }
+        }
+        catch (InterruptedException exception)
+        {
+            // Worker destroyed
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("❌ Error writing to plugin worker " + index + ": " + exception.getMessage());
+
+            // Reader sees process exit and fails pending requests
+            destroy();
+        }
+    }
+
+    private void writeFrame(JsonObject frame) throws IOException
+    {
+        var payload = Fields.PluginWorker.MSGPACK.equals(frame.getString(Fields.PluginWorker.ENCODING))
+                ? MessagePackCodec.encode(frame)
+                : frame.toBuffer().getBytes();
+
+        writer.writeInt(payload.length);
+
+        writer.write(payload);
+
+        writer.flush();
+    }
+
+    // Runs on dedicated reader thread until process output closes
+    private void readFrames()
+    {
+        try (var reader = new DataInputStream(process.getInputStream()))
+        {
+            while (true)
+            {
+                var length = reader.readInt();
+
+                if (length < 0 || length > Config.PLUGIN_MAX_FRAME_SIZE)
+                {
+                    throw new IOException("Invalid frame length " + length);
+                }
+
+                var payload = new byte[length];
+
+                reader.readFully(payload);
+
+                var response = MessagePackCodec.isMessagePack(payload)
+                        ? MessagePackCodec.decode(payload)
+                        : new JsonObject(new String(payload, StandardCharsets.UTF_8));
+
+                var promise = pendingRequests.remove(response.getLong(Fields.PluginWorker.REQUEST_ID, -1L));
+
+                if (promise != null)
+                {
+                    response.remove(Fields.PluginWorker.REQUEST_ID);
+
+                    context.runOnContext(v -> promise.tryComplete(response));
+                }
+            }
+        }
+        catch (EOFException exception)
+        {
+            LOGGER.warn("⚠ Plugin worker " + index + " closed its output");
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("❌ Error reading from plugin worker " + index + ": " + exception.getMessage());
+        }
+        finally
+        {
+            destroy();
+
+            // Nobody will answer pending requests anymore
+            pendingRequests.forEach((requestId, promise) -> context.runOnContext(v -> promise.tryComplete(new JsonObject())));
+
+            pendingRequests.clear();
+
+            context.runOnContext(v -> exitPromise.tryComplete());
+        }
+    }
+}
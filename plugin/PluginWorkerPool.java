@@ -0,0 +1,141 @@
+package org.nms.plugin;
+
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+import static org.nms.App.LOGGER;
+import org.nms.constants.Config;
+
+/**
+ * Fixed set of long lived plugin workers, requests go to the least loaded live worker.
+ * Crashed or unresponsive workers are replaced after a short delay.
+ */
+public class PluginWorkerPool
+{
+    private final Vertx vertx;
+
+    private final Context context;
+
+    private final PluginWorker[] workers;
+
+    private long healthCheckTimerId = -1L;
+
+    private boolean closed = false;
+
+    public PluginWorkerPool(Vertx vertx, int size)
+    {
+        this.vertx = vertx;
+
+        this.context = vertx.getOrCreateContext();
+
+        this.workers = new PluginWorker[Math.max(1, size)];
+    }
+
+    public void start()
+    {
+        for (var i = 0; i < workers.length; i++)
+        {
+            startWorker(i);
+        }
+
+        healthCheckTimerId = vertx.setPeriodic(Config.PLUGIN_WORKER_HEALTH_CHECK_INTERVAL * 1000L, id -> checkHealth());
+    }
+
+    public void close()
+    {
+        closed = true;
+
+        vertx.cancelTimer(healthCheckTimerId);
+
+        for (var worker : workers)
+        {
+            if (worker != null)
+            {
+                worker.destroy();
+            }
+        }
+    }
+
+    public Future<JsonObject> send(JsonObject request, long timeoutSeconds)
+    {
+        PluginWorker selected = null;
+
+        for (var worker : workers)
+        {
+            if (worker != null && worker.isAlive() && (selected == null || worker.pendingCount() < selected.pendingCount()))
+            {
+                selected = worker;
+            }
+        }
+
+        if (selected == null)
+        {
+            LOGGER.error("❌ No live plugin worker to send request to");
+
+            return Future.succeededFuture(new JsonObject());
+        }
+
+        return selected.send(request, timeoutSeconds);
+    }
+
+    private void startWorker(int index)
+    {
+        if (closed)
+        {
+            return;
+        }
+
+        try
+        {
+            var worker = PluginWorker.start(vertx, context, index);
+
+            workers[index] = worker;
+
+            worker.onExit().onComplete(exit -> scheduleRestart(index, worker));
+        }
+        catch (Exception exception)
+        {
+            LOGGER.error("❌ Error starting plugin worker " + index + ": " + exception.getMessage());
+
+            workers[index] = null;
+
+            vertx.setTimer(Config.PLUGIN_WORKER_RESTART_DELAY * 1000L, id -> startWorker(index));
+        }
+    }
+
+    private void scheduleRestart(int index, PluginWorker exitedWorker)
+    {
+        // Ignore exits of workers which were already replaced
+        if (closed || workers[index] != exitedWorker)
+        {
+            return;
+        }
+
+        LOGGER.warn("⚠ Plugin worker " + index + " exited, restarting in " + Config.PLUGIN_WORKER_RESTART_DELAY + " seconds");
+
+        workers[index] = null;
+
+        vertx.setTimer(Config.PLUGIN_WORKER_RESTART_DELAY * 1000L, id -> startWorker(index));
+    }
+
+    private void checkHealth()
+    {
+        for (var worker : workers)
+        {
+            if (worker == null || !worker.isAlive())
+            {
+                continue;
+            }
+
+            worker.ping().onFailure(failure ->
+            {
+                LOGGER.warn("⚠ " + failure.getMessage() + ", killing it");
+
+                // Exit handler takes care of restart
+                worker.destroy();
+            });
+        }
+    }
+}
@@ -0,0 +1,296 @@
+package org.nms.plugin;
+
+import io.vertx.core.Future;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import static org.nms.App.LOGGER;
+import org.nms.constants.Config;
+import org.nms.constants.Fields;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Polls Windows devices from inside JVM over WinRM, same result format as plugin polling.
+ * Sessions are pooled per (ip, port, credential id) so shell creation and authentication are paid once, not per metric group,
+ * sessions idle longer than WINRM_SESSION_IDLE_TIMEOUT are closed.
+ * Confined to plugin verticle's event loop, not thread safe.
+ */
+public class WinRmCollector
+{
+    // PowerShell per metric group, each prints one compressed Json document
+    private static final Map<String, String> SCRIPTS = Map.of(
+            "CPUINFO", """
+                    $c = Get-CimInstance Win32_Processor | Select-Object -First 1
+                    @{ model = $c.Name.Trim(); cores = $c.NumberOfCores; logical_processors = $c.NumberOfLogicalProcessors; max_clock_mhz = $c.MaxClockSpeed } | ConvertTo-Json -Compress
+                    """,
+            "CPUUSAGE", """
+                    $p = Get-CimInstance Win32_PerfFormattedData_PerfOS_Processor
+                    @{ total_percent = ($p | Where-Object Name -eq '_Total').PercentProcessorTime; per_core_percent = @($p | Where-Object Name -ne '_Total' | ForEach-Object { $_.PercentProcessorTime }) } | ConvertTo-Json -Compress
+                    """,
+            "MEMORY", """
+                    $o = Get-CimInstance Win32_OperatingSystem
+                    $t = $o.TotalVisibleMemorySize * 1024; $f = $o.FreePhysicalMemory * 1024
+                    @{ total_bytes = $t; used_bytes = $t - $f; free_bytes = $f; used_percent = [math]::Round(($t - $f) * 100 / $t, 1) } | ConvertTo-Json -Compress
+                    """,
+            "DISK", """
+                    @{ disks = @(Get-CimInstance Win32_LogicalDisk -Filter 'DriveType=3' | ForEach-Object { @{ drive = $_.DeviceID; total_bytes = $_.Size; free_bytes = $_.FreeSpace; used_percent = [math]::Round(($_.Size - $_.FreeSpace) * 100 / $_.Size, 1) } }) } | ConvertTo-Json -Compress -Depth 3
+                    """,
+            "UPTIME", """
+                    @{ uptime_seconds = [int64]((Get-Date) - (Get-CimInstance Win32_OperatingSystem).LastBootUpTime).TotalSeconds } | ConvertTo-Json -Compress
+                    """,
+            "PROCESS", """
+                    @{ processes = @(Get-CimInstance Win32_PerfFormattedData_PerfProc_Process | Where-Object { $_.Name -ne '_Total' -and $_.Name -ne 'Idle' } | Sort-Object PercentProcessorTime -Descending | Select-Object -First 20 | ForEach-Object { @{ pid = $_.IDProcess; name = $_.Name; cpu_percent = $_.PercentProcessorTime; memory_bytes = $_.WorkingSet } }) } | ConvertTo-Json -Compress -Depth 3
+                    """,
+            "NETWORK", """
+                    @{ interfaces = @(Get-CimInstance Win32_PerfRawData_Tcpip_NetworkInterface | ForEach-Object { @{ interface = $_.Name; bytes_sent = $_.BytesSentPersec; bytes_received = $_.BytesReceivedPersec; packets_sent = $_.PacketsSentPersec; packets_received = $_.PacketsReceivedPersec; errors = $_.PacketsReceivedErrors + $_.PacketsOutboundErrors } }) } | ConvertTo-Json -Compress -Depth 3
+                    """,
+            "SYSTEMINFO", """
+                    $s = Get-CimInstance Win32_ComputerSystem; $o = Get-CimInstance Win32_OperatingSystem
+                    @{ hostname = $s.Name; os = $o.Caption; manufacturer = $s.Manufacturer; model = $s.Model; total_memory_bytes = $s.TotalPhysicalMemory } | ConvertTo-Json -Compress
+                    """
+    );
+
+    private final Vertx vertx;
+
+    private final HttpClient client;
+
+    // Sessions are only shared by devices with same host and same username and password, an edited credential never reuses old ones
+    private record SessionKey(String ip, String port, String credentialId, int secretHash) {}
+
+    // Sessions not in use, most recently used last
+    private final HashMap<SessionKey, ArrayDeque<WinRmSession>> idleSessions = new HashMap<>();
+
+    private final long evictionTimerId;
+
+    public WinRmCollector(Vertx vertx)
+    {
+        this.vertx = vertx;
+
+        this.client = vertx.createHttpClient(new HttpClientOptions()
+                .setKeepAlive(true)
+                .setTrustAll(Config.WINRM_TRUST_ALL_CERTIFICATES)
+                .setVerifyHost(!Config.WINRM_TRUST_ALL_CERTIFICATES));
+
+        if (Config.WINRM_TRUST_ALL_CERTIFICATES)
+        {
+            LOGGER.warn("⚠ WinRM certificates and host names are not verified");
+        }
+
+        this.evictionTimerId = vertx.setPeriodic(Config.WINRM_SESSION_IDLE_TIMEOUT * 1000L, id -> evictIdleSessions());
+    }
+
+    public boolean supports(JsonObject device)
+    {
+        var credential = device.getJsonObject(Fields.PluginPollingRequest.CREDENTIALS);
+
+        return credential != null && Config.IN_PROCESS_COLLECTOR_PROTOCOLS.contains(credential.getString(Fields.Credential.PROTOCOL));
+    }
+
+    /**
+     * Polls metric groups of one device one after other on a pooled session, never fails.
+     * Every WinRM call gets time left until deadline, metric groups not started before it are reported as timed out.
+     */
+    public Future<JsonObject> poll(JsonObject device, long deadline)
+    {
+        var metricGroups = device.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray());
+
+        var results = new JsonArray();
+
+        return pollMetricGroup(device, metricGroups, 0, results, deadline).map(done -> new JsonObject()
+                .put(Fields.PluginPollingResponse.MONITOR_ID, device.getValue(Fields.PluginPollingRequest.MONITOR_ID))
+                .put(Fields.PluginPollingResponse.METRIC_GROUPS, results));
+    }
+
+    /**
+     * Closes pooled sessions of a credential which was updated or deleted, sessions in use are not pooled again under new secret
+     */
+    public void closeSessions(int credentialId)
+    {
+        var closed = 0;
+
+        for (var iterator = idleSessions.entrySet().iterator(); iterator.hasNext(); )
+        {
+            var entry = iterator.next();
+
+            if (entry.getKey().credentialId().equals(String.valueOf(credentialId)))
+            {
+                entry.getValue().forEach(WinRmSession::close);
+
+                closed += entry.getValue().size();
+
+                iterator.remove();
+            }
+        }
+
+        if (closed > 0)
+        {
+            LOGGER.info("🔑 Closed " + closed + " WinRM sessions of changed credential " + credentialId);
+        }
+    }
+
+    public void close()
+    {
+        vertx.cancelTimer(evictionTimerId);
+
+        idleSessions.values().forEach(sessions -> sessions.forEach(WinRmSession::close));
+
+        idleSessions.clear();
+
+        client.close();
+    }
+
+    private Future<Void> pollMetricGroup(JsonObject device, JsonArray metricGroups, int index, JsonArray results, long deadline)
+    {
+        if (index == metricGroups.size())
+        {
+            return Future.succeededFuture();
+        }
+
+        var name = metricGroups.getString(index);
+
+        var result = new JsonObject().put(Fields.PluginPollingResponse.NAME, name);
+
+        results.add(result);
+
+        var script = SCRIPTS.get(name);
+
+        if (script == null)
+        {
+            failed(result, "Unsupported metric group: " + name);
+
+            return pollMetricGroup(device, metricGroups, index + 1, results, deadline);
+        }
+
+        if (System.currentTimeMillis() >= deadline)
+        {
+            failed(result, "No time left before deadline").put(Fields.PluginTimeout.STATUS, Fields.PluginTimeout.TIMEOUT_STATUS);
+
+            return pollMetricGroup(device, metricGroups, index + 1, results, deadline);
+        }
+
+        var key = sessionKey(device);
+
+        return acquire(key, device, deadline).compose(session -> session.runPowerShell(script, deadline)
+                        .onComplete(output -> release(key, session, output.succeeded()))
+                        .onSuccess(output -> result.put(Fields.Discovery.SUCCESS, true).put(Fields.PluginPollingResponse.DATA, output))
+                        .onFailure(failure -> failed(result, failure))
+                        .transform(done -> pollMetricGroup(device, metricGroups, index + 1, results, deadline)),
+                failure ->
+                {
+                    // Host unreachable or credential rejected, every remaining metric group would fail the same way
+                    failed(result, failure);
+
+                    for (var i = index + 1; i < metricGroups.size(); i++)
+                    {
+                        results.add(failed(new JsonObject().put(Fields.PluginPollingResponse.NAME, metricGroups.getString(i)), failure));
+                    }
+
+                    return Future.succeededFuture();
+                });
+    }
+
+    private JsonObject failed(JsonObject result, String message)
+    {
+        return result.put(Fields.Discovery.SUCCESS, false).put(Fields.PluginDiscoveryResponse.MESSAGE, message);
+    }
+
+    private JsonObject failed(JsonObject result, Throwable failure)
+    {
+        failed(result, failure.getMessage());
+
+        if (failure instanceof TimeoutException)
+        {
+            result.put(Fields.PluginTimeout.STATUS, Fields.PluginTimeout.TIMEOUT_STATUS);
+        }
+
+        return result;
+    }
+
+    private Future<WinRmSession> acquire(SessionKey key, JsonObject device, long deadline)
+    {
+        var sessions = idleSessions.get(key);
+
+        if (sessions != null && !sessions.isEmpty())
+        {
+            return Future.succeededFuture(sessions.pollLast());
+        }
+
+        var credential = device.getJsonObject(Fields.PluginPollingRequest.CREDENTIALS);
+
+        var secret = credential.getJsonObject(Fields.Credential.CREDENTIAL, new JsonObject());
+
+        return new WinRmSession(
+                client,
+                device.getString(Fields.PluginPollingRequest.IP),
+                device.getInteger(Fields.PluginPollingRequest.PORT),
+                secret.getString(Fields.Credential.USERNAME),
+                secret.getString(Fields.Credential.PASSWORD),
+                Config.POLLING_TIMEOUT_PER_METRIC_GROUP * 1000L
+        ).open(deadline);
+    }
+
+    // Session that failed a command may be broken, it is closed instead of reused
+    private void release(SessionKey key, WinRmSession session, boolean healthy)
+    {
+        var sessions = idleSessions.computeIfAbsent(key, k -> new ArrayDeque<>());
+
+        if (healthy && sessions.size() < Config.WINRM_MAX_IDLE_SESSIONS_PER_HOST)
+        {
+            sessions.addLast(session);
+
+            return;
+        }
+
+        session.close();
+    }
+
+    private void evictIdleSessions()
+    {
+        var cutoff = System.currentTimeMillis() - Config.WINRM_SESSION_IDLE_TIMEOUT * 1000L;
+
+        var evicted = 0;
+
+        for (var iterator = idleSessions.values().iterator(); iterator.hasNext(); )
+        {
+            var sessions = iterator.next();
+
+            while (!sessions.isEmpty() && sessions.peekFirst().lastUsed() < cutoff)
+            {
+                sessions.pollFirst().close();
+
+                evicted++;
+            }
+
+            if (sessions.isEmpty())
+            {
+                iterator.remove();
+            }
+        }
+
+        if (evicted > 0)
+        {
+            LOGGER.debug("Closed " + evicted + " idle WinRM sessions");
+        }
+    }
+
+    private SessionKey sessionKey(JsonObject device)
+    {
+        var credential = device.getJsonObject(Fields.PluginPollingRequest.CREDENTIALS);
+
+        var secret = credential.getJsonObject(Fields.Credential.CREDENTIAL, new JsonObject());
+
+        return new SessionKey(
+                device.getString(Fields.PluginPollingRequest.IP),
+                String.valueOf(device.getValue(Fields.PluginPollingRequest.PORT)),
+                String.valueOf(credential.getValue(Fields.Credential.ID)),
+                Objects.hash(secret.getString(Fields.Credential.USERNAME), secret.getString(Fields.Credential.PASSWORD)));
+    }
+}
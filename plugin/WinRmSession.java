@@ -0,0 +1,270 @@
+package org.nms.plugin;
+
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.RequestOptions;
+
+import org.nms.constants.Config;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * One remote shell on a Windows host over WS-Management ( WinRM ) with Basic authentication, over HTTPS unless WINRM_USE_HTTPS is off.
+ * Plain HTTP is refused unless WINRM_ALLOW_BASIC_OVER_HTTP is set, Basic authentication would expose password.
+ * Shell is created once and reused for many commands, every command is Command, Receive until done, then Signal terminate.
+ * Calls made for a caller get time left until its deadline, cleanup calls ( terminate, delete ) get timeoutMillis.
+ * Not thread safe, used by one caller at a time through WinRmCollector's pool.
+ */
+public class WinRmSession
+{
+    private static final String SHELL_RESOURCE_URI = "http://schemas.microsoft.com/wbem/wsman/1/windows/shell/cmd";
+
+    private static final String CREATE_ACTION = "http://schemas.xmlsoap.org/ws/2004/09/transfer/Create";
+
+    private static final String DELETE_ACTION = "http://schemas.xmlsoap.org/ws/2004/09/transfer/Delete";
+
+    private static final String COMMAND_ACTION = "http://schemas.microsoft.com/wbem/wsman/1/windows/shell/Command";
+
+    private static final String RECEIVE_ACTION = "http://schemas.microsoft.com/wbem/wsman/1/windows/shell/Receive";
+
+    private static final String SIGNAL_ACTION = "http://schemas.microsoft.com/wbem/wsman/1/windows/shell/Signal";
+
+    private static final String TERMINATE_SIGNAL = "http://schemas.microsoft.com/wbem/wsman/1/windows/shell/signal/terminate";
+
+    private static final Pattern SHELL_ID = Pattern.compile("<(?:\\w+:)?Selector Name=\"ShellId\">([^<]+)<|<(?:\\w+:)?ShellId>([^<]+)<");
+
+    private static final Pattern COMMAND_ID = Pattern.compile("<(?:\\w+:)?CommandId>([^<]+)<");
+
+    private static final Pattern STDOUT = Pattern.compile("<(?:\\w+:)?Stream[^>]*Name=\"stdout\"[^>]*>([^<]*)<");
+
+    private static final Pattern STDERR = Pattern.compile("<(?:\\w+:)?Stream[^>]*Name=\"stderr\"[^>]*>([^<]*)<");
+
+    private static final Pattern DONE = Pattern.compile("State=\"[^\"]*CommandState/Done\"");
+
+    private static final Pattern EXIT_CODE = Pattern.compile("<(?:\\w+:)?ExitCode>(-?\\d+)<");
+
+    private static final Pattern FAULT_TEXT = Pattern.compile("<(?:\\w+:)?Text[^>]*>([^<]*)<|<(?:\\w+:)?Message>([^<]*)<");
+
+    private final HttpClient client;
+
+    private final String ip;
+
+    private final int port;
+
+    private final String authorization;
+
+    // Timeout of cleanup calls
+    private final long timeoutMillis;
+
+    private String shellId;
+
+    private long lastUsed = System.currentTimeMillis();
+
+    public WinRmSession(HttpClient client, String ip, int port, String username, String password, long timeoutMillis)
+    {
+        this.client = client;
+
+        this.ip = ip;
+
+        this.port = port;
+
+        this.authorization = "Basic " + Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Future<WinRmSession> open(long deadline)
+    {
+        if (!Config.WINRM_USE_HTTPS && !Config.WINRM_ALLOW_BASIC_OVER_HTTP)
+        {
+            return Future.failedFuture("WinRM over plain HTTP to " + ip + " refused, Basic authentication would send password in cleartext");
+        }
+
+        var body = "<rsp:Shell><rsp:InputStreams>stdin</rsp:InputStreams><rsp:OutputStreams>stdout stderr</rsp:OutputStreams></rsp:Shell>";
+
+        var options = "<w:OptionSet><w:Option Name=\"WINRS_NOPROFILE\">TRUE</w:Option><w:Option Name=\"WINRS_CODEPAGE\">65001</w:Option></w:OptionSet>";
+
+        return post(CREATE_ACTION, options, body, deadline).compose(response ->
+        {
+            var matcher = SHELL_ID.matcher(response);
+
+            if (!matcher.find())
+            {
+                return Future.failedFuture("No shell id in WinRM response from " + ip);
+            }
+
+            shellId = matcher.group(1) != null ? matcher.group(1) : matcher.group(2);
+
+            return Future.succeededFuture(this);
+        });
+    }
+
+    /**
+     * Runs a PowerShell script in shell and completes with its stdout, fails on non zero exit code or once deadline passed
+     */
+    public Future<String> runPowerShell(String script, long deadline)
+    {
+        lastUsed = System.currentTimeMillis();
+
+        var encodedScript = Base64.getEncoder().encodeToString(script.getBytes(StandardCharsets.UTF_16LE));
+
+        var body = "<rsp:CommandLine><rsp:Command>powershell.exe</rsp:Command><rsp:Arguments>-NoProfile -NonInteractive -EncodedCommand "
+                + encodedScript + "</rsp:Arguments></rsp:CommandLine>";
+
+        var options = "<w:OptionSet><w:Option Name=\"WINRS_CONSOLEMODE_STDIN\">TRUE</w:Option><w:Option Name=\"WINRS_SKIP_CMD_SHELL\">TRUE</w:Option></w:OptionSet>";
+
+        return post(COMMAND_ACTION, shellSelector() + options, body, deadline).compose(response ->
+        {
+            var matcher = COMMAND_ID.matcher(response);
+
+            if (!matcher.find())
+            {
+                return Future.failedFuture("No command id in WinRM response from " + ip);
+            }
+
+            var commandId = matcher.group(1);
+
+            return receive(commandId, new StringBuilder(), new StringBuilder(), deadline)
+                    .eventually(() -> terminate(commandId));
+        });
+    }
+
+    // Frees command on host, result of command does not depend on it
+    private Future<Void> terminate(String commandId)
+    {
+        var body = "<rsp:Signal CommandId=\"" + commandId + "\"><rsp:Code>" + TERMINATE_SIGNAL + "</rsp:Code></rsp:Signal>";
+
+        return post(envelope(SIGNAL_ACTION, shellSelector(), body, timeoutMillis), timeoutMillis).<Void>mapEmpty().otherwiseEmpty();
+    }
+
+    public Future<Void> close()
+    {
+        if (shellId == null)
+        {
+            return Future.succeededFuture();
+        }
+
+        return post(envelope(DELETE_ACTION, shellSelector(), "", timeoutMillis), timeoutMillis).mapEmpty();
+    }
+
+    public long lastUsed()
+    {
+        return lastUsed;
+    }
+
+    // Output arrives in chunks, receive again until command reports done
+    private Future<String> receive(String commandId, StringBuilder stdout, StringBuilder stderr, long deadline)
+    {
+        var body = "<rsp:Receive><rsp:DesiredStream CommandId=\"" + commandId + "\">stdout stderr</rsp:DesiredStream></rsp:Receive>";
+
+        return post(RECEIVE_ACTION, shellSelector(), body, deadline).compose(response ->
+        {
+            decodeStreams(STDOUT, response, stdout);
+
+            decodeStreams(STDERR, response, stderr);
+
+            if (!DONE.matcher(response).find())
+            {
+                return receive(commandId, stdout, stderr, deadline);
+            }
+
+            var exitCode = EXIT_CODE.matcher(response);
+
+            if (exitCode.find() && !"0".equals(exitCode.group(1)))
+            {
+                return Future.failedFuture("Command exited with code " + exitCode.group(1) + ": " + stderr.toString().trim());
+            }
+
+            return Future.succeededFuture(stdout.toString().trim());
+        });
+    }
+
+    private void decodeStreams(Pattern stream, String response, StringBuilder output)
+    {
+        var matcher = stream.matcher(response);
+
+        while (matcher.find())
+        {
+            if (!matcher.group(1).isEmpty())
+            {
+                output.append(new String(Base64.getDecoder().decode(matcher.group(1)), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private Future<String> post(String action, String headers, String body, long deadline)
+    {
+        var remainingMillis = deadline - System.currentTimeMillis();
+
+        if (remainingMillis <= 0)
+        {
+            return Future.failedFuture(new TimeoutException("No time left before deadline on " + ip));
+        }
+
+        return post(envelope(action, headers, body, remainingMillis), remainingMillis);
+    }
+
+    private Future<String> post(String envelope, long timeoutMillis)
+    {
+        var options = new RequestOptions()
+                .setMethod(HttpMethod.POST)
+                .setHost(ip)
+                .setPort(port)
+                .setSsl(Config.WINRM_USE_HTTPS)
+                .setURI(Config.WINRM_PATH)
+                .setIdleTimeout(timeoutMillis)
+                .putHeader("Content-Type", "application/soap+xml;charset=UTF-8")
+                .putHeader("Authorization", authorization);
+
+        return client.request(options)
+                .compose(request -> request.send(envelope))
+                .compose(response -> response.body().compose(body ->
+                {
+                    if (response.statusCode() == 200)
+                    {
+                        return Future.succeededFuture(body.toString(StandardCharsets.UTF_8));
+                    }
+
+                    if (response.statusCode() == 401)
+                    {
+                        return Future.failedFuture("WinRM authentication failed on " + ip);
+                    }
+
+                    var fault = FAULT_TEXT.matcher(body.toString(StandardCharsets.UTF_8));
+
+                    return Future.failedFuture("WinRM request to " + ip + " failed with status " + response.statusCode()
+                            + (fault.find() ? ": " + (fault.group(1) != null ? fault.group(1) : fault.group(2)).trim() : ""));
+                }));
+    }
+
+    private String shellSelector()
+    {
+        return "<w:SelectorSet><w:Selector Name=\"ShellId\">" + shellId + "</w:Selector></w:SelectorSet>";
+    }
+
+    private String envelope(String action, String headers, String body, long timeoutMillis)
+    {
+        return "<s:Envelope xmlns:s=\"http://www.w3.org/2003/05/soap-envelope\""
+                + " xmlns:a=\"http://schemas.xmlsoap.org/ws/2004/08/addressing\""
+                + " xmlns:w=\"http://schemas.dmtf.org/wbem/wsman/1/wsman.xsd\""
+                + " xmlns:rsp=\"http://schemas.microsoft.com/wbem/wsman/1/windows/shell\">"
+                + "<s:Header>"
+                + "<a:To>" + (Config.WINRM_USE_HTTPS ? "https" : "http") + "://" + ip + ":" + port + Config.WINRM_PATH + "</a:To>"
+                + "<w:ResourceURI s:mustUnderstand=\"true\">" + SHELL_RESOURCE_URI + "</w:ResourceURI>"
+                + "<a:ReplyTo><a:Address s:mustUnderstand=\"true\">http://schemas.xmlsoap.org/ws/2004/08/addressing/role/anonymous</a:Address></a:ReplyTo>"
+                + "<a:Action s:mustUnderstand=\"true\">" + action + "</a:Action>"
+                + "<w:MaxEnvelopeSize s:mustUnderstand=\"true\">512000</w:MaxEnvelopeSize>"
+                + "<a:MessageID>uuid:" + UUID.randomUUID() + "</a:MessageID>"
+                + "<w:Locale xml:lang=\"en-US\" s:mustUnderstand=\"false\"/>"
+                + "<w:OperationTimeout>PT" + Math.max(1, timeoutMillis / 1000 - 1) + "S</w:OperationTimeout>"
+                + headers
+                + "</s:Header>"
+                + "<s:Body>" + body + "</s:Body>"
+                + "</s:Envelope>";
+    }
+}
@@ -0,0 +1,154 @@
+package org.nms.scheduler;
+
+import io.vertx.core.json.JsonObject;
+
+import static org.nms.App.LOGGER;
+
+import org.nms.cache.MonitorCache;
+import org.nms.constants.Config;
+
+import java.util.HashMap;
+
+/**
+ * Circuit breaker per monitor, fed once per polling batch with whether any metric group of monitor succeeded in it.
+ * After CIRCUIT_BREAKER_FAILURE_THRESHOLD failed polls in a row monitor is not polled for a backoff which doubles on every reopen,
+ * once it passes a single metric group is polled as probe, success closes breaker, failure opens it again.
+ * Only monitors with failures are tracked, shared by scheduler and API so all methods are synchronized.
+ */
+public class CircuitBreakerRegistry
+{
+    private static CircuitBreakerRegistry instance;
+
+    private CircuitBreakerRegistry(){}
+
+    public static CircuitBreakerRegistry getInstance()
+    {
+        if(instance == null)
+        {
+            instance =  new CircuitBreakerRegistry();
+        }
+
+        return instance;
+    }
+
+    public enum State
+    {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final HashMap<Integer, Breaker> breakers = new HashMap<>();
+
+    // Returns true if a due metric group of monitor may be polled now, first call after backoff claims the probe
+    public synchronized boolean allowPoll(int monitorId)
+    {
+        var breaker = breakers.get(monitorId);
+
+        if (!Config.CIRCUIT_BREAKER_ENABLED || breaker == null || breaker.state == State.CLOSED)
+        {
+            return true;
+        }
+
+        var now = MonitorCache.currentTime();
+
+        if (breaker.state == State.OPEN)
+        {
+            if (now < breaker.openUntil)
+            {
+                return false;
+            }
+
+            breaker.state = State.HALF_OPEN;
+        }
+        // Probe still running, unless its result got lost
+        else if (now - breaker.probeStartedAt < Config.CIRCUIT_BREAKER_PROBE_TIMEOUT * 1000L)
+        {
+            return false;
+        }
+
+        breaker.probeStartedAt = now;
+
+        return true;
+    }
+
+    // Monitor counts as failed for a poll only if none of its metric groups succeeded.
+    // Late results of polls sent before breaker opened are ignored, in half open state only the probe ( sent after it was claimed ) counts
+    public synchronized void recordResult(int monitorId, boolean success, long sentAt)
+    {
+        var current = breakers.get(monitorId);
+
+        if (current != null && (current.state == State.OPEN || current.state == State.HALF_OPEN && sentAt < current.probeStartedAt))
+        {
+            return;
+        }
+
+        if (success)
+        {
+            var breaker = breakers.remove(monitorId);
+
+            if (breaker != null && breaker.state != State.CLOSED)
+            {
+                LOGGER.info("✅ Circuit breaker of monitor " + monitorId + " closed after successful probe");
+            }
+
+            return;
+        }
+
+        var breaker = breakers.computeIfAbsent(monitorId, id -> new Breaker());
+
+        breaker.consecutiveFailures++;
+
+        if (breaker.state == State.HALF_OPEN || (breaker.state == State.CLOSED && breaker.consecutiveFailures >= Config.CIRCUIT_BREAKER_FAILURE_THRESHOLD))
+        {
+            var backoff = Math.min(
+                    Config.CIRCUIT_BREAKER_MAX_BACKOFF,
+                    Config.CIRCUIT_BREAKER_BASE_BACKOFF * (1L << Math.min(breaker.opens, 30)));
+
+            breaker.opens++;
+
+            breaker.state = State.OPEN;
+
+            breaker.openUntil = MonitorCache.currentTime() + backoff * 1000L;
+
+            LOGGER.warn("⚠ Circuit breaker of monitor " + monitorId + " opened after " + breaker.consecutiveFailures + " failed polls, backing off for " + backoff + " seconds");
+        }
+    }
+
+    public synchronized void remove(int monitorId)
+    {
+        breakers.remove(monitorId);
+    }
+
+    public synchronized JsonObject state(int monitorId)
+    {
+        var breaker = breakers.get(monitorId);
+
+        if (breaker == null)
+        {
+            return new JsonObject()
+                    .put("state", State.CLOSED.name())
+                    .put("consecutive_failures", 0)
+                    .put("retry_in_seconds", 0);
+        }
+
+        return new JsonObject()
+                .put("state", breaker.state.name())
+                .put("consecutive_failures", breaker.consecutiveFailures)
+                .put("retry_in_seconds", breaker.state == State.OPEN ? Math.max(0L, (breaker.openUntil - MonitorCache.currentTime()) / 1000L) : 0L);
+    }
+
+    private static class Breaker
+    {
+        private State state = State.CLOSED;
+
+        private int consecutiveFailures = 0;
+
+        // Times breaker opened since it was last closed, drives exponential backoff
+        private int opens = 0;
+
+        private long openUntil = 0L;
+
+        private long probeStartedAt = 0L;
+    }
+}
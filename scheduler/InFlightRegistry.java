@@ -0,0 +1,119 @@
+package org.nms.scheduler;
+
+import org.nms.cache.IntIntMap;
+
+/**
+ * Tracks metric groups whose previous poll is still queued or running, and decides what happens when they come due again.
+ * SKIP drops the overrun poll, COALESCE remembers one extra poll however many overruns happen,
+ * QUEUE remembers every overrun poll up to a limit. Dropped polls are counted per metric group.
+ * Confined to scheduler verticle, not thread safe.
+ */
+public class InFlightRegistry
+{
+    public enum OverrunPolicy
+    {
+        SKIP,
+        COALESCE,
+        QUEUE
+    }
+
+    private final OverrunPolicy policy;
+
+    private final int maxQueuedPolls;
+
+    // Metric group id -> number of polls owed after current one finishes
+    private final IntIntMap inFlight = new IntIntMap(1024);
+
+    // Metric group id -> queued polls still owed after the next one, carried over while group is not in flight
+    private final IntIntMap carriedPolls = new IntIntMap(64);
+
+    // Metric group id -> number of polls dropped because previous poll was still in flight
+    private final IntIntMap skippedPolls = new IntIntMap(64);
+
+    private long totalSkippedPolls = 0L;
+
+    public InFlightRegistry(OverrunPolicy policy, int maxQueuedPolls)
+    {
+        this.policy = policy;
+
+        this.maxQueuedPolls = Math.max(1, maxQueuedPolls);
+    }
+
+    // Returns true if metric group may be polled now, otherwise overrun policy is applied
+    public boolean tryAcquire(int id)
+    {
+        var owed = inFlight.get(id);
+
+        if (owed == -1)
+        {
+            inFlight.put(id, Math.max(0, carriedPolls.remove(id)));
+
+            return true;
+        }
+
+        if (policy == OverrunPolicy.COALESCE && owed == 0 || policy == OverrunPolicy.QUEUE && owed < maxQueuedPolls)
+        {
+            inFlight.put(id, owed + 1);
+        }
+        else
+        {
+            skippedPolls.put(id, Math.max(0, skippedPolls.get(id)) + 1);
+
+            totalSkippedPolls++;
+        }
+
+        return false;
+    }
+
+    // Marks poll of metric group finished, returns true if another poll is owed and should be triggered right away
+    public boolean release(int id)
+    {
+        var owed = inFlight.remove(id);
+
+        if (owed > 1)
+        {
+            carriedPolls.put(id, owed - 1);
+        }
+
+        return owed > 0;
+    }
+
+    // Undoes tryAcquire of a poll which is not sent after all, polls owed to metric group are kept for its next poll
+    public void abandon(int id)
+    {
+        var owed = inFlight.remove(id);
+
+        if (owed > 0)
+        {
+            carriedPolls.put(id, owed);
+        }
+    }
+
+    // Forgets deleted metric group, a poll of it still in flight finishes as if nothing was owed
+    public void remove(int id)
+    {
+        if (inFlight.containsKey(id))
+        {
+            inFlight.put(id, 0);
+        }
+
+        carriedPolls.remove(id);
+
+        skippedPolls.remove(id);
+    }
+
+    public int skippedPolls(int id)
+    {
+        return Math.max(0, skippedPolls.get(id));
+    }
+
+    public long totalSkippedPolls()
+    {
+        return totalSkippedPolls;
+    }
+
+    public int size()
+    {
+        return inFlight.size();
+    }
+}
@@ -9,8 +9,9 @@ import io.vertx.sqlclient.Tuple;
 
 import static org.nms.App.LOGGER;
 
-import org.nms.App;
+import org.nms.cache.DueMetricGroups;
 import org.nms.cache.MonitorCache;
+import org.nms.cache.StaticResultCache;
 import org.nms.constants.Config;
 import org.nms.constants.Fields;
 import org.nms.constants.Queries;
@@ -18,12 +19,29 @@ import org.nms.utils.DbUtils;
 
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Set;
 
 public class Scheduler extends AbstractVerticle
 {
-    private long timerId = 0L;
+    private long timerId = -1L;
+
+    // Polling requests waiting for a free plugin slot
+    private final ArrayDeque<PollingBatch> pendingBatches = new ArrayDeque<>();
+
+    private final InFlightRegistry inFlightRegistry = new InFlightRegistry(
+            InFlightRegistry.OverrunPolicy.valueOf(Config.POLLING_OVERRUN_POLICY),
+            Config.MAX_QUEUED_POLLS_PER_METRIC_GROUP);
+
+    private int runningBatches = 0;
+
+    // "monitor id:metric group name" -> batch polling it, a metric group is in at most one batch at a time
+    private final HashMap<String, PollingBatch> runningBatchesByGroup = new HashMap<>();
 
     @Override
     public void start(Promise<Void> startPromise)
@@ -35,10 +53,21 @@ public class Scheduler extends AbstractVerticle
         {
             if (populateCacheResult.succeeded())
             {
+                // Re-arm timer whenever cache due times change
+                vertx.eventBus().localConsumer(Fields.EventBus.SCHEDULER_RESCHEDULE_ADDRESS, message -> scheduleNextPoll());
+
+                // Forget in flight state and skip counts of deleted metric groups
+                vertx.eventBus().<JsonArray>localConsumer(Fields.EventBus.SCHEDULER_METRIC_GROUPS_DELETED_ADDRESS, message ->
+                        message.body().forEach(id -> inFlightRegistry.remove((Integer) id)));
+
+                // Save results streamed by plugin as soon as they arrive
+                vertx.eventBus().<JsonObject>localConsumer(Fields.EventBus.PLUGIN_POLLING_RESULT_ADDRESS, message ->
+                        savePollingResults(flattenStreamedResult(message.body())));
+
                 // Start scheduler
-                timerId = App.VERTX.setPeriodic(Config.SCHEDULER_CHECKING_INTERVAL * 1000, id -> pollTimedOutGroups());
+                scheduleNextPoll();
 
-                LOGGER.info("✅ Scheduler Verticle deployed with CHECKING_INTERVAL: " + Config.SCHEDULER_CHECKING_INTERVAL + " seconds, on thread [ " + Thread.currentThread().getName() + " ] ");
+                LOGGER.info("✅ Scheduler Verticle deployed with TICK: " + Config.SCHEDULER_TICK_MILLIS + " milliseconds, on thread [ " + Thread.currentThread().getName() + " ] ");
 
                 startPromise.complete();
             }
@@ -57,88 +86,366 @@ public class Scheduler extends AbstractVerticle
         LOGGER.debug("⚠ Scheduler stopped");
     }
 
+    // Arm a single timer for the earliest due metric group, nothing is armed while cache is empty
+    private void scheduleNextPoll()
+    {
+        if (timerId != -1L)
+        {
+            vertx.cancelTimer(timerId);
+
+            timerId = -1L;
+        }
+
+        var delay = MonitorCache.getInstance().nextDueIn();
+
+        if (delay < 0)
+        {
+            return;
+        }
+
+        timerId = vertx.setTimer(Math.max(1L, delay), id ->
+        {
+            timerId = -1L;
+
+            pollTimedOutGroups();
+
+            scheduleNextPoll();
+        });
+    }
+
     private void pollTimedOutGroups()
     {
-        var timedOutGroups = MonitorCache.getInstance().collect(Config.SCHEDULER_CHECKING_INTERVAL * 1000);
+        var timedOutGroups = MonitorCache.getInstance().collect();
 
         if (!timedOutGroups.isEmpty())
         {
-            var request = buildPollingRequest(timedOutGroups);
+            pendingBatches.addAll(buildPollingRequests(timedOutGroups));
 
-            var POLLING_TIMEOUT = Config.BASE_TIME + ( timedOutGroups.size() * Config.POLLING_TIMEOUT_PER_METRIC_GROUP );
+            dispatchPollingBatches();
+        }
+    }
 
-            // Send payload to plugin
-            vertx.eventBus().<JsonObject>request(
-                    Fields.EventBus.PLUGIN_SPAWN_ADDRESS,
-                    request,
-                    new DeliveryOptions().setSendTimeout(POLLING_TIMEOUT * 1000L),
-                    pluginResponse ->
-                    {
-                        if (pluginResponse.succeeded())
-                        {
-                            var response = pluginResponse.result().body();
+    // Send queued batches while concurrency limit allows, each finished batch frees a slot for next one
+    private void dispatchPollingBatches()
+    {
+        while (runningBatches < Config.MAX_CONCURRENT_POLLING_BATCHES && !pendingBatches.isEmpty())
+        {
+            runningBatches++;
 
-                            if (!response.isEmpty())
-                            {
-                                var results = response.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray());
+            sendPollingBatch(pendingBatches.poll());
+        }
+    }
 
-                                savePollingResults(results);
-                            }
-                        }
-                        else
+    private void sendPollingBatch(PollingBatch batch)
+    {
+        var POLLING_TIMEOUT = Config.BASE_TIME + ( batch.metricGroupIds.size() * Config.POLLING_TIMEOUT_PER_METRIC_GROUP );
+
+        registerBatch(batch);
+
+        // Send payload to plugin, batch may first wait in polling lane and plugin verticle needs a moment to answer after timeout
+        vertx.eventBus().<JsonObject>request(
+                Fields.EventBus.PLUGIN_SPAWN_ADDRESS,
+                batch.request,
+                new DeliveryOptions().setSendTimeout((POLLING_TIMEOUT + Config.POLLING_LANE_QUEUE_TIMEOUT + Config.PLUGIN_REPLY_MARGIN) * 1000L),
+                pluginResponse ->
+                {
+                    runningBatches--;
+
+                    if (pluginResponse.succeeded())
+                    {
+                        var response = pluginResponse.result().body();
+
+                        if (!response.isEmpty())
                         {
-                            LOGGER.error("❌ Error During Polling: " + pluginResponse.cause().getMessage());
+                            savePollingResults(flattenPollingResults(response));
                         }
                     }
-            );
+                    else
+                    {
+                        LOGGER.error("❌ Error During Polling: " + pluginResponse.cause().getMessage());
+                    }
+
+                    finishBatch(batch);
+
+                    releaseMetricGroups(batch.metricGroupIds);
+
+                    dispatchPollingBatches();
+                }
+        );
+    }
+
+    // Results streamed for groups of batch are credited to it until it finishes, however plugin splits them into lines
+    private void registerBatch(PollingBatch batch)
+    {
+        batch.sentAt = MonitorCache.currentTime();
+
+        batch.groupKeys().forEach(key -> runningBatchesByGroup.put(key, batch));
+    }
+
+    // Every monitor of batch counts one poll, failed only if none of its groups succeeded in streamed lines or final reply.
+    // Results arriving later are still stored but no longer feed breaker
+    private void finishBatch(PollingBatch batch)
+    {
+        batch.groupKeys().forEach(key -> runningBatchesByGroup.remove(key, batch));
+
+        var devices = batch.request.getJsonArray(Fields.PluginPollingRequest.DEVICES, new JsonArray());
+
+        for (var i = 0; i < devices.size(); i++)
+        {
+            var monitorId = devices.getJsonObject(i).getInteger(Fields.PluginPollingRequest.MONITOR_ID);
+
+            CircuitBreakerRegistry.getInstance().recordResult(monitorId, batch.succeededMonitors.contains(monitorId), batch.sentAt);
         }
     }
 
-    private JsonObject buildPollingRequest(List<JsonObject> timedOutGroups)
+    // Mark polls finished, metric groups which overran meanwhile are made due again right away
+    private void releaseMetricGroups(List<Integer> metricGroupIds)
     {
-        var metricGroups = new JsonArray();
+        var owedPolls = 0;
+
+        for (var id : metricGroupIds)
+        {
+            if (inFlightRegistry.release(id))
+            {
+                MonitorCache.getInstance().pollNow(id);
+
+                owedPolls++;
+            }
+        }
+
+        if (owedPolls > 0)
+        {
+            scheduleNextPoll();
+        }
+    }
+
+    /**
+     * One request entry per device, listing names of all its due metric groups, so plugin can serve them over one session.
+     * Devices are split into batches of POLLING_BATCH_SIZE, all groups of one device always stay in same batch.
+     * Metric groups whose previous poll is still in flight are left out.
+     */
+    private List<PollingBatch> buildPollingRequests(DueMetricGroups timedOutGroups)
+    {
+        var devices = new LinkedHashMap<Integer, JsonObject>();
+
+        var deviceMetricGroupIds = new HashMap<Integer, List<Integer>>();
+
+        // Indexes of groups whose poll was dropped this time
+        var skippedGroups = new ArrayList<Integer>();
+
+        for (var i = 0; i < timedOutGroups.size(); i++)
+        {
+            var skippedBefore = inFlightRegistry.totalSkippedPolls();
+
+            if (!inFlightRegistry.tryAcquire(timedOutGroups.id(i)))
+            {
+                if (inFlightRegistry.totalSkippedPolls() > skippedBefore)
+                {
+                    skippedGroups.add(i);
+                }
+
+                continue;
+            }
+
+            // Monitors with open circuit breaker are left out, a half open one gets a single probe group,
+            // breaker is asked only after in flight check so a skipped poll never claims the probe
+            if (!CircuitBreakerRegistry.getInstance().allowPoll(timedOutGroups.monitorId(i)))
+            {
+                inFlightRegistry.abandon(timedOutGroups.id(i));
+
+                continue;
+            }
+
+            var index = i;
+
+            var device = devices.computeIfAbsent(timedOutGroups.monitorId(i), monitorId -> new JsonObject()
+
+                    .put(Fields.PluginPollingRequest.MONITOR_ID, monitorId)
+
+                    .put(Fields.PluginPollingRequest.IP, timedOutGroups.ip(index))
+
+                    .put(Fields.PluginPollingRequest.PORT, timedOutGroups.port(index))
+
+                    .put(Fields.PluginPollingRequest.CREDENTIALS, timedOutGroups.credential(index))
 
-        for (var metricGroup : timedOutGroups)
+                    .put(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray()));
+
+            device.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS).add(timedOutGroups.name(i));
+
+            deviceMetricGroupIds.computeIfAbsent(timedOutGroups.monitorId(i), monitorId -> new ArrayList<>()).add(timedOutGroups.id(i));
+        }
+
+        if (!skippedGroups.isEmpty())
         {
-            var groupData = new JsonObject()
+            logSkippedPolls(timedOutGroups, skippedGroups);
+        }
+
+        var batches = new ArrayList<PollingBatch>();
 
-                    .put(Fields.PluginPollingRequest.MONITOR_ID, metricGroup.getInteger(Fields.MonitorCache.MONITOR_ID))
+        var batchDevices = new JsonArray();
 
-                    .put(Fields.PluginPollingRequest.NAME, metricGroup.getString(Fields.MonitorCache.NAME))
+        var batchMetricGroupIds = new ArrayList<Integer>();
 
-                    .put(Fields.PluginPollingRequest.IP, metricGroup.getString(Fields.MonitorCache.IP))
+        for (var device : devices.entrySet())
+        {
+            batchDevices.add(device.getValue());
+
+            batchMetricGroupIds.addAll(deviceMetricGroupIds.get(device.getKey()));
 
-                    .put(Fields.PluginPollingRequest.PORT, metricGroup.getInteger(Fields.MonitorCache.PORT))
+            if (batchDevices.size() == Config.POLLING_BATCH_SIZE)
+            {
+                batches.add(new PollingBatch(buildPollingRequest(batchDevices), batchMetricGroupIds));
 
-                    .put(Fields.PluginPollingRequest.CREDENTIALS, metricGroup.getJsonObject(Fields.MonitorCache.CREDENTIAL));
+                batchDevices = new JsonArray();
 
-            metricGroups.add(groupData);
+                batchMetricGroupIds = new ArrayList<>();
+            }
         }
 
+        if (!batchDevices.isEmpty())
+        {
+            batches.add(new PollingBatch(buildPollingRequest(batchDevices), batchMetricGroupIds));
+        }
+
+        return batches;
+    }
+
+    // Names groups skipped most often, their interval is shorter than their polls take
+    private void logSkippedPolls(DueMetricGroups timedOutGroups, List<Integer> skippedGroups)
+    {
+        skippedGroups.sort((first, second) -> Integer.compare(
+                inFlightRegistry.skippedPolls(timedOutGroups.id(second)), inFlightRegistry.skippedPolls(timedOutGroups.id(first))));
+
+        var worstGroups = new ArrayList<String>();
+
+        for (var index : skippedGroups.subList(0, Math.min(Config.SKIPPED_POLLS_LOGGED_GROUPS, skippedGroups.size())))
+        {
+            worstGroups.add(timedOutGroups.name(index) + " of monitor " + timedOutGroups.monitorId(index)
+                    + " ( " + inFlightRegistry.skippedPolls(timedOutGroups.id(index)) + " times )");
+        }
+
+        LOGGER.warn("⏭ Skipped " + skippedGroups.size() + " polls of metric groups still in flight, total skipped: " + inFlightRegistry.totalSkippedPolls()
+                + ", most skipped: " + String.join(", ", worstGroups));
+    }
+
+    private JsonObject buildPollingRequest(JsonArray devices)
+    {
         return new JsonObject()
 
                 .put(Fields.PluginPollingRequest.TYPE, Fields.PluginPollingRequest.POLLING)
 
-                .put(Fields.PluginPollingRequest.METRIC_GROUPS, metricGroups);
+                .put(Fields.PluginPollingRequest.DEVICES, devices);
+    }
+
+    // Fan per device results back out to one row per metric group, flat per group responses are passed through
+    private JsonArray flattenPollingResults(JsonObject response)
+    {
+        var devices = response.getJsonArray(Fields.PluginPollingResponse.DEVICES);
+
+        if (devices == null)
+        {
+            return response.getJsonArray(Fields.PluginPollingResponse.METRIC_GROUPS, new JsonArray());
+        }
+
+        var results = new JsonArray();
+
+        for (var i = 0; i < devices.size(); i++)
+        {
+            var device = devices.getJsonObject(i);
+
+            var metricGroups = device.getJsonArray(Fields.PluginPollingResponse.METRIC_GROUPS, new JsonArray());
+
+            for (var k = 0; k < metricGroups.size(); k++)
+            {
+                results.add(metricGroups.getJsonObject(k)
+                        .put(Fields.PluginPollingResponse.MONITOR_ID, device.getInteger(Fields.PluginPollingResponse.MONITOR_ID)));
+            }
+        }
+
+        return results;
+    }
+
+    // Streamed line is either one device with its metric groups or a single metric group result
+    private JsonArray flattenStreamedResult(JsonObject result)
+    {
+        if (result.containsKey(Fields.PluginPollingResponse.METRIC_GROUPS))
+        {
+            return flattenPollingResults(new JsonObject().put(Fields.PluginPollingResponse.DEVICES, new JsonArray().add(result)));
+        }
+
+        return new JsonArray().add(result);
     }
 
     private void savePollingResults(JsonArray results)
     {
         var insertValuesBatch = new ArrayList<Tuple>();
 
+        var timedOutGroups = 0;
+
+        var heartbeats = new ArrayList<Tuple>();
+
+        // Static results being stored, remembered once their insert succeeded
+        var staticResults = new ArrayList<JsonObject>();
+
         for (var i = 0; i < results.size(); i++)
         {
             var result = results.getJsonObject(i);
 
+            var monitorId = result.getInteger(Fields.PluginPollingResponse.MONITOR_ID);
+
+            // Batch polling this group remembers success of its monitor, breaker is fed once batch is done
+            var batch = monitorId == null ? null : runningBatchesByGroup.get(monitorId + ":" + result.getString(Fields.PluginPollingResponse.NAME));
+
+            if (batch != null && result.getBoolean("success", false))
+            {
+                batch.succeededMonitors.add(monitorId);
+            }
+
             if (!result.getBoolean("success", false))
             {
+                if (Fields.PluginTimeout.TIMEOUT_STATUS.equals(result.getString(Fields.PluginTimeout.STATUS)))
+                {
+                    timedOutGroups++;
+                }
+
                 continue;
             }
 
             result.put(Fields.PollingResult.TIME, ZonedDateTime.now(ZoneId.of(Config.INDIA_ZONE_NAME)).toString());
 
+            var data = result.getValue(Fields.PluginPollingResponse.DATA);
+
+            var name = result.getString(Fields.PluginPollingResponse.NAME);
+
+            // Static metric groups only get a heartbeat while their data stays same
+            if (monitorId != null && StaticResultCache.getInstance().isStatic(name))
+            {
+                heartbeats.add(Tuple.of(monitorId, name));
+
+                if (StaticResultCache.getInstance().isUnchanged(monitorId, name, String.valueOf(data)))
+                {
+                    continue;
+                }
+
+                staticResults.add(result);
+            }
+
+            // Binary encoded responses carry polled data already decoded
+            if (data instanceof JsonObject || data instanceof JsonArray)
+            {
+                insertValuesBatch.add(Tuple.of(
+                        result.getInteger(Fields.PluginPollingResponse.MONITOR_ID),
+
+                        result.getString(Fields.PluginPollingResponse.NAME),
+
+                        data
+                ));
+
+                continue;
+            }
+
             // Polled data as string
-            var polledData = result.getString(Fields.PluginPollingResponse.DATA);
+            var polledData = data == null ? null : data.toString();
 
             // Is Polled data parsable as JsonObject
             if (isParsableAsJsonObject(polledData))
@@ -175,13 +482,38 @@ public class Scheduler extends AbstractVerticle
             }
         }
 
+        if (timedOutGroups > 0)
+        {
+            LOGGER.warn("⚠ " + timedOutGroups + " metric groups got no result before plugin deadline");
+        }
+
+        if (!heartbeats.isEmpty())
+        {
+            DbUtils.sendQueryExecutionRequest(Queries.Monitor.UPDATE_LAST_POLLED_AT, heartbeats).onComplete(heartbeatResult ->
+            {
+                if (heartbeatResult.failed())
+                {
+                    LOGGER.error("❌ Error during updating last polled time: " + heartbeatResult.cause().getMessage());
+                }
+            });
+        }
+
         if (!insertValuesBatch.isEmpty())
         {
             var saveRequest = DbUtils.sendQueryExecutionRequest(Queries.PollingResult.INSERT, insertValuesBatch);
 
             saveRequest.onComplete(insertInDbResult ->
             {
-                if (insertInDbResult.failed())
+                if (insertInDbResult.succeeded())
+                {
+                    staticResults.forEach(result -> StaticResultCache.getInstance().remember(
+                            result.getInteger(Fields.PluginPollingResponse.MONITOR_ID),
+
+                            result.getString(Fields.PluginPollingResponse.NAME),
+
+                            String.valueOf(result.getValue(Fields.PluginPollingResponse.DATA))));
+                }
+                else
                 {
                     LOGGER.error("❌ Error during inserting polled data: " + insertInDbResult.cause().getMessage());
                 }
@@ -216,4 +548,46 @@ public class Scheduler extends AbstractVerticle
             return false;
         }
     }
+
+    // Plugin request together with ids of metric groups it polls
+    private static class PollingBatch
+    {
+        private final JsonObject request;
+
+        private final List<Integer> metricGroupIds;
+
+        // Monitors with at least one successful metric group so far
+        private final Set<Integer> succeededMonitors = new HashSet<>();
+
+        private long sentAt;
+
+        private PollingBatch(JsonObject request, List<Integer> metricGroupIds)
+        {
+            this.request = request;
+
+            this.metricGroupIds = metricGroupIds;
+        }
+
+        // "monitor id:metric group name" of every group polled by batch, same key results carry
+        private List<String> groupKeys()
+        {
+            var keys = new ArrayList<String>();
+
+            var devices = request.getJsonArray(Fields.PluginPollingRequest.DEVICES, new JsonArray());
+
+            for (var i = 0; i < devices.size(); i++)
+            {
+                var device = devices.getJsonObject(i);
+
+                var metricGroups = device.getJsonArray(Fields.PluginPollingRequest.METRIC_GROUPS, new JsonArray());
+
+                for (var k = 0; k < metricGroups.size(); k++)
+                {
+                    keys.add(device.getInteger(Fields.PluginPollingRequest.MONITOR_ID) + ":" + metricGroups.getString(k));
+                }
+            }
+
+            return keys;
+        }
+    }
 }
\ No newline at end of file
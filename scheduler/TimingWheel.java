@@ -0,0 +1,231 @@
+package org.nms.scheduler;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * Hashed timing wheel over absolute monotonic deadlines, finds due entries in O(due) and supports schedule / cancel in O(1).
+ * Entries farther than one rotation away are kept in their slot with a remaining round count.
+ * Entries are small non negative ids ( e.g. cache slot indices ), kept in flat arrays instead of node objects.
+ * Not thread safe, callers have to synchronize access.
+ */
+public class TimingWheel
+{
+    private static final int NONE = -1;
+
+    private final long tickDuration;
+
+    private final long origin;
+
+    private final int mask;
+
+    private final int[] wheel;
+
+    private int[] next;
+
+    private int[] prev;
+
+    private int[] slots;
+
+    private long[] rounds;
+
+    private int size = 0;
+
+    private long currentTick = 0L;
+
+    public TimingWheel(long tickDuration, int wheelSize, long origin)
+    {
+        if (tickDuration <= 0)
+        {
+            throw new IllegalArgumentException("Tick duration must be positive");
+        }
+
+        // Round wheel size up to power of two, so slot lookup is a mask
+        var wheelLength = Integer.highestOneBit(Math.max(1, wheelSize - 1)) << 1;
+
+        this.tickDuration = tickDuration;
+
+        this.origin = origin;
+
+        this.mask = wheelLength - 1;
+
+        this.wheel = new int[wheelLength];
+
+        Arrays.fill(wheel, NONE);
+
+        this.next = new int[0];
+
+        this.prev = new int[0];
+
+        this.slots = new int[0];
+
+        this.rounds = new long[0];
+    }
+
+    // Schedule id to expire at absolute deadline, replaces existing schedule of same id
+    public void schedule(int id, long deadline)
+    {
+        ensureCapacity(id + 1);
+
+        cancel(id);
+
+        // First tick whose time is not before deadline, but never a tick already processed
+        var tick = Math.max(currentTick + 1, Math.floorDiv(deadline - origin + tickDuration - 1, tickDuration));
+
+        var slot = (int) (tick & mask);
+
+        rounds[id] = (tick - currentTick - 1) / wheel.length;
+
+        slots[id] = slot;
+
+        prev[id] = NONE;
+
+        next[id] = wheel[slot];
+
+        if (wheel[slot] != NONE)
+        {
+            prev[wheel[slot]] = id;
+        }
+
+        wheel[slot] = id;
+
+        size++;
+    }
+
+    // Remove id from wheel, returns false if it was not scheduled
+    public boolean cancel(int id)
+    {
+        if (!contains(id))
+        {
+            return false;
+        }
+
+        unlink(id);
+
+        return true;
+    }
+
+    public boolean contains(int id)
+    {
+        return id >= 0 && id < slots.length && slots[id] != NONE;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Move wheel forward up to now and pass every id which expired on the way to consumer.
+     * Expired id is already removed when consumer runs, so consumer may schedule it again.
+     */
+    public void advance(long now, IntConsumer consumer)
+    {
+        var targetTick = Math.floorDiv(now - origin, tickDuration);
+
+        // Nothing to expire, skip idle ticks at once
+        if (size == 0)
+        {
+            currentTick = Math.max(currentTick, targetTick);
+
+            return;
+        }
+
+        while (currentTick < targetTick)
+        {
+            currentTick++;
+
+            var id = wheel[(int) (currentTick & mask)];
+
+            while (id != NONE)
+            {
+                var nextId = next[id];
+
+                if (rounds[id] == 0)
+                {
+                    unlink(id);
+
+                    consumer.accept(id);
+                }
+                else
+                {
+                    rounds[id]--;
+                }
+
+                id = nextId;
+            }
+        }
+    }
+
+    /**
+     * Returns time of the earliest tick holding a due entry within next rotation,
+     * end of the rotation if all entries are farther away, or -1 if wheel is empty
+     */
+    public long nextExpiry()
+    {
+        if (size == 0)
+        {
+            return -1L;
+        }
+
+        for (var tick = currentTick + 1; tick <= currentTick + wheel.length; tick++)
+        {
+            for (var id = wheel[(int) (tick & mask)]; id != NONE; id = next[id])
+            {
+                if (rounds[id] == 0)
+                {
+                    return origin + tick * tickDuration;
+                }
+            }
+        }
+
+        return origin + (currentTick + wheel.length) * tickDuration;
+    }
+
+    private void unlink(int id)
+    {
+        if (prev[id] != NONE)
+        {
+            next[prev[id]] = next[id];
+        }
+        else
+        {
+            wheel[slots[id]] = next[id];
+        }
+
+        if (next[id] != NONE)
+        {
+            prev[next[id]] = prev[id];
+        }
+
+        prev[id] = NONE;
+
+        next[id] = NONE;
+
+        slots[id] = NONE;
+
+        size--;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= slots.length)
+        {
+            return;
+        }
+
+        var oldLength = slots.length;
+
+        var newLength = Math.max(capacity, Math.max(16, oldLength * 2));
+
+        next = Arrays.copyOf(next, newLength);
+
+        prev = Arrays.copyOf(prev, newLength);
+
+        slots = Arrays.copyOf(slots, newLength);
+
+        rounds = Arrays.copyOf(rounds, newLength);
+
+        Arrays.fill(slots, oldLength, newLength, NONE);
+    }
+}
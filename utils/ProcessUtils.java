@@ -0,0 +1,361 @@
+package org.nms.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+
+import static org.nms.App.LOGGER;
+import static org.nms.App.VERTX;
+
+import org.nms.constants.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Runs external processes without holding a Vert.x worker thread while they run, pipe I/O runs on virtual or platform threads.
+ * Stdout and stderr are drained concurrently from the start, so child never blocks on a full pipe,
+ * output beyond a hard cap is read and dropped, timeout is a timer which kills the process tree.
+ */
+public class ProcessUtils
+{
+    private static final boolean VIRTUAL_THREADS = "VIRTUAL".equalsIgnoreCase(Config.PROCESS_THREAD_MODE);
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    // Stdin writers and stdout / stderr readers, they block on pipes for whole life of a process
+    private static final ExecutorService STREAM_THREADS = VIRTUAL_THREADS
+            ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("process-stream-", 0).factory())
+            : Executors.newCachedThreadPool(runnable -> newPlatformThread("process-stream-" + THREAD_COUNT.incrementAndGet(), runnable));
+
+    /**
+     * Starts a thread for blocking process I/O, virtual or daemon platform thread depending on PROCESS_THREAD_MODE
+     */
+    public static Thread startThread(String name, Runnable task)
+    {
+        if (VIRTUAL_THREADS)
+        {
+            return Thread.ofVirtual().name(name).start(task);
+        }
+
+        var thread = newPlatformThread(name, task);
+
+        thread.start();
+
+        return thread;
+    }
+
+    /**
+     * Executor running at most maxThreads tasks at once on virtual or daemon platform threads depending on PROCESS_THREAD_MODE,
+     * further tasks wait in its queue, idle threads end after a minute
+     */
+    public static ExecutorService newBoundedExecutor(String namePrefix, int maxThreads)
+    {
+        var threadCount = new AtomicInteger();
+
+        var executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> VIRTUAL_THREADS
+                        ? Thread.ofVirtual().name(namePrefix + threadCount.incrementAndGet()).unstarted(runnable)
+                        : newPlatformThread(namePrefix + threadCount.incrementAndGet(), runnable));
+
+        executor.allowCoreThreadTimeOut(true);
+
+        return executor;
+    }
+
+    private static Thread newPlatformThread(String name, Runnable task)
+    {
+        var thread = new Thread(task, name);
+
+        thread.setDaemon(true);
+
+        return thread;
+    }
+
+    public static Future<Result> execute(ProcessBuilder builder, long timeoutSeconds, Predicate<String> lineConsumer)
+    {
+        return execute(builder, null, timeoutSeconds, lineConsumer);
+    }
+
+    /**
+     * Starts process and completes once it exited and its output is fully read.
+     * Input ( may be null ) is written to stdin in chunks of PROCESS_STDIN_CHUNK_SIZE, then stdin is closed.
+     * Every stdout line is first offered to lineConsumer ( may be null ), lines it returns true for are not kept in output.
+     * lineConsumer runs on a reader thread, a line it throws for is logged and kept in output.
+     */
+    public static Future<Result> execute(ProcessBuilder builder, byte[] input, long timeoutSeconds, Predicate<String> lineConsumer)
+    {
+        var context = VERTX.getOrCreateContext();
+
+        var promise = Promise.<Result>promise();
+
+        Process process;
+
+        try
+        {
+            process = builder.start();
+        }
+        catch (Exception exception)
+        {
+            return Future.failedFuture(exception);
+        }
+
+        var timedOut = new AtomicBoolean(false);
+
+        var timerId = VERTX.setTimer(timeoutSeconds * 1000L, id ->
+        {
+            timedOut.set(true);
+
+            destroy(process);
+        });
+
+        var output = new CappedOutput(Config.PROCESS_MAX_OUTPUT_SIZE);
+
+        var errorOutput = new CappedOutput(Config.PROCESS_MAX_ERROR_OUTPUT_SIZE);
+
+        // Written from its own thread, plugin may start answering before it read whole request
+        CompletableFuture.runAsync(() -> writeInput(process.getOutputStream(), input), STREAM_THREADS);
+
+        var outputRead = CompletableFuture.runAsync(() -> readLines(process.getInputStream(), output, lineConsumer), STREAM_THREADS);
+
+        var errorOutputRead = CompletableFuture.runAsync(() -> readLines(process.getErrorStream(), errorOutput, null), STREAM_THREADS);
+
+        CompletableFuture.allOf(outputRead, errorOutputRead, process.onExit()).whenComplete((v, failure) ->
+        {
+            VERTX.cancelTimer(timerId);
+
+            var result = new Result(
+                    process.isAlive() ? -1 : process.exitValue(),
+                    output.toString(),
+                    errorOutput.toString(),
+                    timedOut.get(),
+                    output.truncated);
+
+            if (result.truncated)
+            {
+                LOGGER.warn("⚠ Output of " + builder.command().get(0) + " exceeded " + Config.PROCESS_MAX_OUTPUT_SIZE + " bytes, rest is dropped");
+            }
+
+            context.runOnContext(ignored ->
+            {
+                if (failure != null)
+                {
+                    promise.fail(failure);
+                }
+                else
+                {
+                    promise.complete(result);
+                }
+            });
+        });
+
+        return promise.future();
+    }
+
+    private static void writeInput(OutputStream stream, byte[] input)
+    {
+        try (stream)
+        {
+            if (input == null)
+            {
+                return;
+            }
+
+            for (var offset = 0; offset < input.length; offset += Config.PROCESS_STDIN_CHUNK_SIZE)
+            {
+                stream.write(input, offset, Math.min(Config.PROCESS_STDIN_CHUNK_SIZE, input.length - offset));
+
+                stream.flush();
+            }
+        }
+        catch (Exception exception)
+        {
+            // Process exited or was killed before reading all of its input
+            LOGGER.debug("Stopped writing process input: " + exception.getMessage());
+        }
+    }
+
+    private static void readLines(InputStream stream, CappedOutput output, Predicate<String> lineConsumer)
+    {
+        var line = new ByteArrayOutputStream();
+
+        var lineTooLong = false;
+
+        var buffer = new byte[8192];
+
+        try (stream)
+        {
+            int read;
+
+            while ((read = stream.read(buffer)) != -1)
+            {
+                for (var i = 0; i < read; i++)
+                {
+                    if (buffer[i] == '\n')
+                    {
+                        if (!lineTooLong)
+                        {
+                            acceptLine(line.toString(StandardCharsets.UTF_8), output, lineConsumer);
+                        }
+
+                        line.reset();
+
+                        lineTooLong = false;
+                    }
+                    else if (!lineTooLong)
+                    {
+                        line.write(buffer[i]);
+
+                        // A single line longer than cap can never be kept, drop it while still draining
+                        if (line.size() > output.capacity)
+                        {
+                            output.truncated = true;
+
+                            lineTooLong = true;
+
+                            line.reset();
+                        }
+                    }
+                }
+            }
+
+            if (!lineTooLong && line.size() > 0)
+            {
+                acceptLine(line.toString(StandardCharsets.UTF_8), output, lineConsumer);
+            }
+        }
+        catch (Exception exception)
+        {
+            // Stream is closed when process is killed
+            LOGGER.debug("Stopped reading process output: " + exception.getMessage());
+        }
+    }
+
+    private static void acceptLine(String line, CappedOutput output, Predicate<String> lineConsumer)
+    {
+        if (lineConsumer != null)
+        {
+            // A failing consumer must not stop draining, process would block on a full pipe, line is kept in output instead
+            try
+            {
+                if (lineConsumer.test(line))
+                {
+                    return;
+                }
+            }
+            catch (Exception exception)
+            {
+                LOGGER.error("❌ Failed to handle process output line: " + exception.getMessage());
+            }
+        }
+
+        output.append(line);
+    }
+
+    private static void destroy(Process process)
+    {
+        process.descendants().forEach(ProcessHandle::destroyForcibly);
+
+        process.destroyForcibly();
+    }
+
+    public static class Result
+    {
+        private final int exitCode;
+
+        private final String output;
+
+        private final String errorOutput;
+
+        private final boolean timedOut;
+
+        private final boolean truncated;
+
+        private Result(int exitCode, String output, String errorOutput, boolean timedOut, boolean truncated)
+        {
+            this.exitCode = exitCode;
+
+            this.output = output;
+
+            this.errorOutput = errorOutput;
+
+            this.timedOut = timedOut;
+
+            this.truncated = truncated;
+        }
+
+        public int exitCode()
+        {
+            return exitCode;
+        }
+
+        // Stdout lines not taken by line consumer, separated by new lines
+        public String output()
+        {
+            return output;
+        }
+
+        public String errorOutput()
+        {
+            return errorOutput;
+        }
+
+        public boolean timedOut()
+        {
+            return timedOut;
+        }
+
+        public boolean truncated()
+        {
+            return truncated;
+        }
+    }
+
+    // Line buffer which stops growing at capacity, only touched by one reader thread
+    private static class CappedOutput
+    {
+        private final int capacity;
+
+        private final StringBuilder builder = new StringBuilder();
+
+        private volatile boolean truncated = false;
+
+        private CappedOutput(int capacity)
+        {
+            this.capacity = capacity;
+        }
+
+        private void append(String line)
+        {
+            if (builder.length() + line.length() + 1 > capacity)
+            {
+                truncated = true;
+
+                return;
+            }
+
+            if (!builder.isEmpty())
+            {
+                builder.append('\n');
+            }
+
+            builder.append(line);
+        }
+
+        @Override
+        public String toString()
+        {
+            return builder.toString();
+        }
+    }
+}